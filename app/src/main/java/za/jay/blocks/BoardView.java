@@ -0,0 +1,393 @@
+package za.jay.blocks;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.util.AttributeSet;
+import android.view.View;
+
+import java.util.Arrays;
+
+import za.jay.blocks.engine.GridModel;
+
+/**
+ * A BoardView draws the entire grid of blocks from a {@link GridModel} in a single View. Each
+ * block is drawn as a circle centered in its cell and, when selected, with the path segments
+ * linking it to the blocks before and after it in the path. Changes to a block only invalidate
+ * the rectangle of the cell that block occupies. Blocks that fall into new cells are animated by
+ * a {@link GravityAnimator}.
+ *
+ * A board can be bound to one model after another. When the size doesn't change the per-block
+ * state is cleared and reused, so boards kept by {@link BoardViewPool} start a game without
+ * allocating or laying out again.
+ */
+public class BoardView extends View {
+
+    public static enum PathDirection {
+        LEFT, RIGHT, UP, DOWN
+    }
+
+    private GridModel mModel;
+    private int mColumns;
+    private int mRows;
+    private int mCellSize;
+
+    private boolean[] mSelected;
+    private PathDirection[] mSrcDirections;
+    private PathDirection[] mDestDirections;
+    private boolean[] mHinted;
+    private GravityAnimator mAnimator;
+
+    /** Shared paints for the block colours, from the {@link ResourceCache} */
+    private int[] mBlockColours;
+    private Paint[] mBlockPaints;
+    /** For blocks of any other colour */
+    private Paint mPaint;
+    private Paint mHintPaint;
+    private RectF mInnerRect;
+    private Rect mPathRect;
+    private Rect mClipRect;
+
+    public BoardView(Context context) {
+        super(context);
+        init();
+    }
+
+    public BoardView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        init();
+    }
+
+    private void init() {
+        ResourceCache cache = ResourceCache.getInstance(getContext());
+        mBlockColours = cache.getBlockColours();
+        mBlockPaints = cache.getBlockPaints();
+        mPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        mPaint.setStyle(Paint.Style.FILL);
+        mHintPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        mHintPaint.setStyle(Paint.Style.STROKE);
+        mInnerRect = new RectF();
+        mPathRect = new Rect();
+        mClipRect = new Rect();
+    }
+
+    /** Set the model that the board draws its blocks from */
+    public void setGridModel(GridModel model) {
+        boolean resized = prepare(model.getWidth(), model.getHeight());
+        mModel = model;
+
+        if (resized) {
+            requestLayout();
+        }
+        invalidate();
+    }
+
+    /**
+     * Set up the per-block state for a board of {@code columns} by {@code rows}, reusing the
+     * current state if it is already that size.
+     * @return true if the board changed size
+     */
+    boolean prepare(int columns, int rows) {
+        if (mAnimator != null) {
+            mAnimator.cancel();
+        }
+        if (mAnimator != null && columns == mColumns && rows == mRows) {
+            Arrays.fill(mSelected, false);
+            Arrays.fill(mSrcDirections, null);
+            Arrays.fill(mDestDirections, null);
+            Arrays.fill(mHinted, false);
+            return false;
+        }
+
+        mColumns = columns;
+        mRows = rows;
+        int count = mColumns * mRows;
+        mSelected = new boolean[count];
+        mSrcDirections = new PathDirection[count];
+        mDestDirections = new PathDirection[count];
+        mHinted = new boolean[count];
+        mAnimator = new GravityAnimator(this, mColumns, mRows);
+        // A pooled board may keep its pixel size with a different number of columns, in which
+        // case onSizeChanged is never called
+        updateCellSize(getWidth());
+        return true;
+    }
+
+    /** Unbind the model and listeners so the board can be pooled. The size is kept. */
+    void reset() {
+        if (mAnimator != null) {
+            mAnimator.cancel();
+        }
+        mModel = null;
+        setOnTouchListener(null);
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        if (mColumns == 0 || mRows == 0) {
+            super.onMeasure(widthMeasureSpec, heightMeasureSpec);
+            return;
+        }
+
+        // Blocks are square so the width of the board determines the height, unless the board is
+        // too tall to fit
+        int width = MeasureSpec.getSize(widthMeasureSpec);
+        int cellSize = width / mColumns;
+        if (MeasureSpec.getMode(heightMeasureSpec) != MeasureSpec.UNSPECIFIED) {
+            cellSize = Math.min(cellSize, MeasureSpec.getSize(heightMeasureSpec) / mRows);
+        }
+        setMeasuredDimension(cellSize * mColumns, cellSize * mRows);
+    }
+
+    @Override
+    protected void onLayout(boolean changed, int left, int top, int right, int bottom) {
+        super.onLayout(changed, left, top, right, bottom);
+        updateCellSize(right - left);
+    }
+
+    private void updateCellSize(int width) {
+        mCellSize = mColumns > 0 ? width / mColumns : 0;
+        mHintPaint.setStrokeWidth(mCellSize / 20.0f);
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        if (mAnimator != null) {
+            mAnimator.cancel();
+        }
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+        if (mModel == null || mCellSize == 0) {
+            return;
+        }
+
+        // Only draw the cells that intersect the dirty region
+        if (!canvas.getClipBounds(mClipRect)) {
+            return;
+        }
+        int firstCol = Math.max(0, mClipRect.left / mCellSize);
+        int lastCol = Math.min(mColumns - 1, (mClipRect.right - 1) / mCellSize);
+        int firstRow = Math.max(0, mClipRect.top / mCellSize);
+        int lastRow = Math.min(mRows - 1, (mClipRect.bottom - 1) / mCellSize);
+        if (mAnimator.isRunning()) {
+            // Falling blocks are drawn above their cells so lower cells may reach the region
+            lastRow = mRows - 1;
+        }
+
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int col = firstCol; col <= lastCol; col++) {
+                int index = col + row * mColumns;
+                int top = row * mCellSize - (int) (mAnimator.getOffset(index) * mCellSize);
+                drawBlock(canvas, index, col * mCellSize, top);
+            }
+        }
+        Metrics.getInstance().onFrameDrawn();
+    }
+
+    private void drawBlock(Canvas canvas, int index, int left, int top) {
+        int colour = mModel.getBlock(index);
+        Paint paint = getBlockPaint(colour);
+
+        int center = (int) (mCellSize / 2.0f);
+        canvas.drawCircle(left + center, top + center, mCellSize / 5.0f, paint);
+
+        if (mHinted[index]) {
+            int third = Math.round(mCellSize / 3.0f);
+            mInnerRect.set(left + center - third, top + center - third,
+                    left + center + third, top + center + third);
+            mHintPaint.setColor(colour);
+            canvas.drawOval(mInnerRect, mHintPaint);
+        }
+
+        if (mSelected[index]) {
+            if (mSrcDirections[index] != null) {
+                shapePathRectangle(mSrcDirections[index], left, top, mPathRect);
+                canvas.drawRect(mPathRect, paint);
+            }
+            if (mDestDirections[index] != null) {
+                shapePathRectangle(mDestDirections[index], left, top, mPathRect);
+                canvas.drawRect(mPathRect, paint);
+            }
+        }
+    }
+
+    private Paint getBlockPaint(int colour) {
+        for (int i = 0; i < mBlockColours.length; i++) {
+            if (mBlockColours[i] == colour) {
+                return mBlockPaints[i];
+            }
+        }
+        mPaint.setColor(colour);
+        return mPaint;
+    }
+
+    /** Adjust 'rect' so that it is the path going in direction 'dir' from the cell at left, top */
+    private void shapePathRectangle(PathDirection dir, int left, int top, Rect rect) {
+        int size = mCellSize;
+        int center = (int) (size / 2.0f);
+        int halfPathWidth = (int) (size / 20.0f);
+
+        switch (dir) {
+            case LEFT:
+                rect.set(0, center - halfPathWidth, center, center + halfPathWidth);
+                break;
+            case RIGHT:
+                rect.set(center, center - halfPathWidth, size, center + halfPathWidth);
+                break;
+            case UP:
+                rect.set(center - halfPathWidth, 0, center + halfPathWidth, center);
+                break;
+            case DOWN:
+                rect.set(center - halfPathWidth, center, center + halfPathWidth, size);
+                break;
+        }
+        rect.offset(left, top);
+    }
+
+    /** Invalidate only the cell occupied by the block at the given index */
+    public void invalidateBlock(int index) {
+        int left = (index % mColumns) * mCellSize;
+        int top = (index / mColumns) * mCellSize;
+        invalidate(left, top, left + mCellSize, top + mCellSize);
+    }
+
+    /**
+     * Invalidate the region covering the changed blocks of each column in a single call.
+     * @param dirtyDepths for each column, the number of rows from the top that changed
+     */
+    public void invalidateBlocks(int[] dirtyDepths) {
+        int firstCol = -1;
+        int lastCol = -1;
+        int maxDepth = 0;
+        for (int col = 0; col < dirtyDepths.length; col++) {
+            if (dirtyDepths[col] > 0) {
+                if (firstCol < 0) {
+                    firstCol = col;
+                }
+                lastCol = col;
+                maxDepth = Math.max(maxDepth, dirtyDepths[col]);
+            }
+        }
+
+        if (firstCol >= 0) {
+            invalidateColumns(firstCol, lastCol, maxDepth - 1);
+        }
+    }
+
+    /**
+     * Invalidate the changed blocks and animate any that fell into new cells. Must be called from
+     * {@link GridModel.GridBatchChangeListener#onBlocksChanged(int[])}.
+     * @param dirtyDepths for each column, the number of rows from the top that changed
+     */
+    public void animateBlocks(int[] dirtyDepths) {
+        invalidateBlocks(dirtyDepths);
+        mAnimator.animateFalls(mModel, dirtyDepths);
+    }
+
+    /** Invalidate the columns from {@code firstCol} to {@code lastCol} down to {@code lastRow} */
+    void invalidateColumns(int firstCol, int lastCol, int lastRow) {
+        invalidate(firstCol * mCellSize, 0, (lastCol + 1) * mCellSize, (lastRow + 1) * mCellSize);
+    }
+
+    /** Select the block with a source incoming path (may be null) */
+    public void select(int index, PathDirection src) {
+        if (!mSelected[index]) {
+            mSrcDirections[index] = src;
+            mSelected[index] = true;
+            invalidateBlock(index);
+        } else if (mSrcDirections[index] == null && src != null) {
+            mSrcDirections[index] = src;
+            invalidateBlock(index);
+        }
+    }
+
+    /** Deselect the block, removing any paths */
+    public void deselect(int index) {
+        if (mSelected[index]) {
+            mSrcDirections[index] = null;
+            mDestDirections[index] = null;
+            mSelected[index] = false;
+            invalidateBlock(index);
+        }
+    }
+
+    /** Add a link from the block to the next selected block */
+    public void connectNext(int index, PathDirection dest) {
+        if (mSelected[index]) {
+            mDestDirections[index] = dest;
+            invalidateBlock(index);
+        }
+    }
+
+    /** Remove the link from the block to the next block */
+    public void disconnectNext(int index) {
+        if (mSelected[index]) {
+            mDestDirections[index] = null;
+            invalidateBlock(index);
+        }
+    }
+
+    /** Highlight the blocks of a hinted move, replacing any previous hint */
+    public void showHint(int[] path) {
+        clearHint();
+        for (int index : path) {
+            mHinted[index] = true;
+            invalidateBlock(index);
+        }
+    }
+
+    /** Remove the highlight from any hinted blocks */
+    public void clearHint() {
+        for (int i = 0; i < mHinted.length; i++) {
+            if (mHinted[i]) {
+                mHinted[i] = false;
+                invalidateBlock(i);
+            }
+        }
+    }
+
+    public boolean isSelected(int index) {
+        return mSelected[index];
+    }
+
+    /** Get the color of the block at the given index */
+    public int getColor(int index) {
+        return mModel.getBlock(index);
+    }
+
+    /**
+     * Find the index of the block at a touch position.
+     * @return the block index or -1 if the position is outside the board
+     */
+    public int getBlockIndex(float x, float y) {
+        if (mCellSize == 0 || x < 0 || y < 0) {
+            return -1;
+        }
+        int col = (int) (x / mCellSize);
+        int row = (int) (y / mCellSize);
+        if (col >= mColumns || row >= mRows) {
+            return -1;
+        }
+        return col + row * mColumns;
+    }
+
+    /** Get the width and height of a cell in pixels */
+    public int getCellSize() {
+        return mCellSize;
+    }
+
+    public int getColumns() {
+        return mColumns;
+    }
+
+    public int getRows() {
+        return mRows;
+    }
+
+}
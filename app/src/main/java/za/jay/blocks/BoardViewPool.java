@@ -0,0 +1,78 @@
+package za.jay.blocks;
+
+import android.content.Context;
+import android.content.MutableContextWrapper;
+import android.view.ViewGroup;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps {@link BoardView}s alive between games so that starting a game binds an existing view to
+ * its model instead of creating and sizing a new one. Pooled views are created on the
+ * application context through a {@link MutableContextWrapper}, which is pointed at an activity
+ * only while that activity is using the view, so the pool never holds on to an activity. Only
+ * used from the main thread.
+ */
+public class BoardViewPool {
+
+    private static final int MAX_POOLED = 2;
+
+    private static final List<BoardView> sPool = new ArrayList<BoardView>(MAX_POOLED);
+
+    private BoardViewPool() {
+    }
+
+    /** Create a board sized for {@code columns} by {@code rows} ahead of time, if none is pooled */
+    public static void warm(Context context, int columns, int rows) {
+        if (findPooled(columns, rows) >= 0 || sPool.size() >= MAX_POOLED) {
+            return;
+        }
+        BoardView view = new BoardView(new MutableContextWrapper(context.getApplicationContext()));
+        view.prepare(columns, rows);
+        sPool.add(view);
+    }
+
+    /**
+     * Take a board from the pool, preferring one already sized for {@code columns} by
+     * {@code rows}, or create one if the pool is empty.
+     */
+    public static BoardView acquire(Context context, int columns, int rows) {
+        int index = findPooled(columns, rows);
+        if (index < 0) {
+            index = sPool.size() - 1;
+        }
+
+        if (index < 0) {
+            return new BoardView(new MutableContextWrapper(context));
+        }
+        BoardView view = sPool.remove(index);
+        ((MutableContextWrapper) view.getContext()).setBaseContext(context);
+        return view;
+    }
+
+    /** Detach a board from its activity and return it to the pool if there is room */
+    public static void release(BoardView view) {
+        ViewGroup parent = (ViewGroup) view.getParent();
+        if (parent != null) {
+            parent.removeView(view);
+        }
+        view.reset();
+
+        MutableContextWrapper context = (MutableContextWrapper) view.getContext();
+        context.setBaseContext(context.getApplicationContext());
+        if (sPool.size() < MAX_POOLED) {
+            sPool.add(view);
+        }
+    }
+
+    private static int findPooled(int columns, int rows) {
+        for (int i = 0; i < sPool.size(); i++) {
+            BoardView view = sPool.get(i);
+            if (view.getColumns() == columns && view.getRows() == rows) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
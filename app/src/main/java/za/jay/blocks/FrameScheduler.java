@@ -0,0 +1,69 @@
+package za.jay.blocks;
+
+import android.os.SystemClock;
+import android.view.Choreographer;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import za.jay.blocks.engine.Scheduler;
+
+/**
+ * The real {@link Scheduler} for the game, running tasks on the {@link Choreographer} frame
+ * after they fall due so that anything they change is drawn in the same frame. Time is the
+ * uptime clock, which frame times are also measured on. Only used from the main thread.
+ */
+public class FrameScheduler implements Scheduler {
+
+    private static FrameScheduler sInstance;
+
+    /** The frame callback of each task, kept until it is released so it can be reused */
+    private final Map<Runnable, Choreographer.FrameCallback> mCallbacks =
+            new HashMap<Runnable, Choreographer.FrameCallback>();
+
+    public static FrameScheduler getInstance() {
+        if (sInstance == null) {
+            sInstance = new FrameScheduler();
+        }
+        return sInstance;
+    }
+
+    private FrameScheduler() {
+    }
+
+    @Override
+    public long now() {
+        return SystemClock.uptimeMillis();
+    }
+
+    @Override
+    public void schedule(final Runnable task, long delayMillis) {
+        Choreographer.FrameCallback callback = mCallbacks.get(task);
+        if (callback == null) {
+            callback = new Choreographer.FrameCallback() {
+                @Override
+                public void doFrame(long frameTimeNanos) {
+                    task.run();
+                }
+            };
+            mCallbacks.put(task, callback);
+        }
+        Choreographer.getInstance().postFrameCallbackDelayed(callback, delayMillis);
+    }
+
+    @Override
+    public void cancel(Runnable task) {
+        Choreographer.FrameCallback callback = mCallbacks.get(task);
+        if (callback != null) {
+            Choreographer.getInstance().removeFrameCallback(callback);
+        }
+    }
+
+    @Override
+    public void release(Runnable task) {
+        Choreographer.FrameCallback callback = mCallbacks.remove(task);
+        if (callback != null) {
+            Choreographer.getInstance().removeFrameCallback(callback);
+        }
+    }
+}
@@ -3,14 +3,19 @@ package za.jay.blocks;
 import android.app.Activity;
 import android.app.AlertDialog;
 import android.content.DialogInterface;
+import android.content.Intent;
 import android.os.Bundle;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
 
+import za.jay.blocks.engine.GameMode;
+
 public class GameActivity extends Activity {
 
     public static final String EXTRA_GAME_MODE = "extra_game_mode";
+    public static final String EXTRA_WIDTH = "extra_width";
+    public static final String EXTRA_HEIGHT = "extra_height";
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -19,8 +24,11 @@ public class GameActivity extends Activity {
         getWindow().getDecorView().setSystemUiVisibility(View.SYSTEM_UI_FLAG_LOW_PROFILE);
 
         if (savedInstanceState == null) {
-            GameMode mode = (GameMode) getIntent().getSerializableExtra(EXTRA_GAME_MODE);
-            GameFragment frag = GameFragment.newInstance(mode);
+            Intent intent = getIntent();
+            GameMode mode = (GameMode) intent.getSerializableExtra(EXTRA_GAME_MODE);
+            int width = intent.getIntExtra(EXTRA_WIDTH, GameFragment.DEFAULT_WIDTH);
+            int height = intent.getIntExtra(EXTRA_HEIGHT, GameFragment.DEFAULT_HEIGHT);
+            GameFragment frag = GameFragment.newInstance(mode, width, height);
             getFragmentManager().beginTransaction()
                     .replace(android.R.id.content, frag)
                     .commit();
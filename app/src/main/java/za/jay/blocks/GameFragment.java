@@ -2,70 +2,99 @@ package za.jay.blocks;
 
 import android.app.AlertDialog;
 import android.app.Fragment;
-import android.content.Context;
 import android.content.DialogInterface;
-import android.content.res.Resources;
-import android.graphics.Rect;
 import android.graphics.Typeface;
 import android.os.Bundle;
+import android.util.Log;
 import android.view.GestureDetector;
 import android.view.LayoutInflater;
+import android.view.MenuItem;
 import android.view.MotionEvent;
 import android.view.View;
 import android.view.ViewGroup;
-import android.widget.Button;
-import android.widget.GridLayout;
 import android.widget.ImageButton;
 import android.widget.TextView;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.io.File;
+import java.io.IOException;
+
+import za.jay.blocks.engine.Countdown;
+import za.jay.blocks.engine.GameMode;
+import za.jay.blocks.engine.GameRecorder;
+import za.jay.blocks.engine.GameSession;
+import za.jay.blocks.engine.GameSnapshot;
+import za.jay.blocks.engine.MoveAnalyzer;
+import za.jay.blocks.engine.PowerUp;
 
 public class GameFragment extends Fragment implements View.OnTouchListener,
-        GridModel.GridChangeListener {
+        GameSession.Listener {
 
     private static final String TAG = "GameFragment";
 
     private static final String ARG_MODE = "extra_mode";
+    private static final String ARG_WIDTH = "extra_width";
+    private static final String ARG_HEIGHT = "extra_height";
 
-    private static final int WIDTH = 6;
-    private static final int HEIGHT = 6;
+    private static final String STATE_SNAPSHOT = "state_snapshot";
+    private static final String STATE_SCORE_SAVED = "state_score_saved";
 
-    private GameMode mGameMode;
+    /** Default board dimensions */
+    public static final int DEFAULT_WIDTH = 6;
+    public static final int DEFAULT_HEIGHT = 6;
 
-    private GridModel mModel;
-    private GridLayout mGrid;
+    /** Interval between refreshes of the metrics overlay in milliseconds */
+    private static final long METRICS_UPDATE_INTERVAL = 1000;
 
-    private int mScore;
-    private int mMoves;
+    private GameMode mGameMode;
+    private int mWidth;
+    private int mHeight;
+
+    private GameSession mSession;
+    private GameRecorder mRecorder;
+    /** The session for the next game, created while the end of game dialog is up */
+    private GameSession mNextSession;
+    private BoardView mGrid;
+    /** Whether the score of the current game has been sent to the database */
+    private boolean mScoreSaved;
+    private AlertDialog mEndGameDialog;
 
     private TextView mRemainingCount;
     private TextView mScoreCount;
 
-    private List<Integer> mPath;
-    private Rect mLastHitRect;
-    private boolean mSquare;
+    private SwipeTracker mSwipeTracker;
 
-    private CountdownHelper mCountdown;
+    private Metrics mMetrics;
+    private TextView mMetricsText;
+    private final Runnable mMetricsUpdater = new Runnable() {
+        @Override
+        public void run() {
+            mMetricsText.setText(mMetrics.summarise());
+            mMetricsText.postDelayed(this, METRICS_UPDATE_INTERVAL);
+        }
+    };
+
+    private Countdown mCountdown;
 
     private GestureDetector mGestureDetector;
 
     private ScoresDatabase mScoresDatabase;
+    private ResourceCache mResourceCache;
 
     private ImageButton mPowerup1Button;
     private ImageButton mPowerup2Button;
     private ImageButton mPowerup3Button;
     private TextView mPowerupHint1;
     private TextView mPowerupHint2;
-    private PowerUp mActivePowerUp;
 
-    enum PowerUp {
-        MORE_MOVES, SHRINKERS, EXPANDERS
+    public static GameFragment newInstance(GameMode mode) {
+        return newInstance(mode, DEFAULT_WIDTH, DEFAULT_HEIGHT);
     }
 
-    public static GameFragment newInstance(GameMode mode) {
+    public static GameFragment newInstance(GameMode mode, int width, int height) {
         Bundle args = new Bundle();
         args.putSerializable(ARG_MODE, mode);
+        args.putInt(ARG_WIDTH, width);
+        args.putInt(ARG_HEIGHT, height);
 
         GameFragment frag = new GameFragment();
         frag.setArguments(args);
@@ -76,40 +105,34 @@ public class GameFragment extends Fragment implements View.OnTouchListener,
     public void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
 
-        mGameMode = (GameMode) getArguments().getSerializable(ARG_MODE);
-        mModel = new GridModel(WIDTH, HEIGHT, getResources().getIntArray(R.array.block_colours));
-        mModel.setGridChangeListener(this);
+        Bundle args = getArguments();
+        mGameMode = (GameMode) args.getSerializable(ARG_MODE);
+        mWidth = args.getInt(ARG_WIDTH, DEFAULT_WIDTH);
+        mHeight = args.getInt(ARG_HEIGHT, DEFAULT_HEIGHT);
+        mResourceCache = ResourceCache.getInstance(getActivity());
+        mMetrics = Metrics.getInstance();
 
-        if (mGameMode == GameMode.TIMED) {
-            mCountdown = new CountdownHelper(60 * 1000); // 60 seconds
-            mCountdown.setCountdownListener(new CountdownHelper.CountdownListener() {
-                @Override
-                public void onCountdownTick(long remaining) {
-                    if (remaining == 0) {
-                        endGame();
-                    }
-                    mRemainingCount.setText(String.valueOf(remaining / 1000));
-                }
-            });
+        if (savedInstanceState == null || !restoreSession(savedInstanceState)) {
+            startSession(createSession());
         }
 
-        mPath = new ArrayList<Integer>();
-        mLastHitRect = new Rect();
-
         mGestureDetector = new GestureDetector(getActivity(),
                 new GestureDetector.SimpleOnGestureListener() {
 
             @Override
             public boolean onDoubleTap(MotionEvent e) {
                 int index = calculateGridIndex(e.getX(), e.getY());
-                mModel.removeBlock(index);
-                increaseScore(1);
-                incrementMoves();
+                if (index < 0) {
+                    return false;
+                }
+                mSession.doubleTap(index);
                 return true;
             }
         });
 
-        mScoresDatabase = new ScoresDatabase(getActivity());
+        mScoresDatabase = ScoresDatabase.getInstance(getActivity());
+
+        setHasOptionsMenu(true);
     }
 
     @Override
@@ -120,16 +143,146 @@ public class GameFragment extends Fragment implements View.OnTouchListener,
         initGridView(root);
         initStatsViews(root);
         initPowerups(root);
+        mMetricsText = (TextView) root.findViewById(R.id.game_metrics);
+        updateGameViews();
 
         return root;
     }
 
+    @Override
+    public void onSaveInstanceState(Bundle outState) {
+        super.onSaveInstanceState(outState);
+        long timeRemaining = 0;
+        long freezeRemaining = 0;
+        if (mGameMode == GameMode.TIMED) {
+            timeRemaining = mCountdown.getRemaining();
+            freezeRemaining = mCountdown.getFreezeRemaining();
+        }
+        outState.putByteArray(STATE_SNAPSHOT,
+                GameSnapshot.save(mSession, timeRemaining, freezeRemaining, mRecorder));
+        outState.putBoolean(STATE_SCORE_SAVED, mScoreSaved);
+    }
+
+    /**
+     * Carry on with the board saved in {@code savedInstanceState} instead of dealing a new one.
+     * @return false if there was no game to restore or it couldn't be restored
+     */
+    private boolean restoreSession(Bundle savedInstanceState) {
+        if (!savedInstanceState.containsKey(STATE_SNAPSHOT)) {
+            return false;
+        }
+
+        GameSnapshot snapshot;
+        GameSession session;
+        GameRecorder recorder;
+        try {
+            snapshot = GameSnapshot.read(savedInstanceState.getByteArray(STATE_SNAPSHOT));
+            session = snapshot.createSession(mResourceCache.getBlockColours());
+            recorder = snapshot.createRecorder();
+        } catch (IllegalArgumentException e) {
+            Log.w(TAG, "Couldn't restore the game", e);
+            return false;
+        }
+
+        session.getModel().setOperationTimer(mMetrics);
+        startSession(session, recorder, snapshot.getTimeRemaining());
+        if (mCountdown != null && snapshot.getFreezeRemaining() > 0) {
+            mCountdown.freeze(snapshot.getFreezeRemaining());
+        }
+        mScoreSaved = savedInstanceState.getBoolean(STATE_SCORE_SAVED);
+        return true;
+    }
+
+    @Override
+    public void onDestroyView() {
+        super.onDestroyView();
+        // Keep the board for the next game
+        BoardViewPool.release(mGrid);
+        mGrid = null;
+    }
+
+    /** Create a session for a new game with the same mode and size as this one */
+    private GameSession createSession() {
+        GameSession session = new GameSession(mGameMode, mWidth, mHeight,
+                mResourceCache.getBlockColours());
+        session.getModel().setOperationTimer(mMetrics);
+        return session;
+    }
+
+    /** Make {@code session} the current game and start recording it */
+    private void startSession(GameSession session) {
+        startSession(session, new GameRecorder(session.getSeed(), mGameMode, mWidth, mHeight,
+                mResourceCache.getBlockColours().length), GameSession.TIME_LIMIT);
+    }
+
+    /**
+     * Make {@code session} the current game.
+     * @param recorder the recording of the game so far, or null to not record it
+     * @param timeRemaining the time left if the game is timed
+     */
+    private void startSession(GameSession session, GameRecorder recorder, long timeRemaining) {
+        mSession = session;
+        mSession.setListener(this);
+        mRecorder = recorder;
+        mSession.setRecorder(mRecorder);
+        mScoreSaved = false;
+
+        if (mGameMode == GameMode.TIMED) {
+            if (mCountdown != null) {
+                mCountdown.release();
+            }
+            mCountdown = new Countdown(timeRemaining, FrameScheduler.getInstance());
+            mCountdown.setListener(new Countdown.Listener() {
+                @Override
+                public void onCountdownTick(long remaining) {
+                    mRemainingCount.setText(formatSeconds(remaining));
+                    if (remaining == 0) {
+                        mSession.finish();
+                    }
+                }
+            });
+        }
+    }
+
+    /** Start a new game on the same board without recreating any views */
+    private void playAgain() {
+        mSession.setListener(null);
+        startSession(mNextSession != null ? mNextSession : createSession());
+        mNextSession = null;
+        mEndGameDialog = null;
+
+        mGrid.setGridModel(mSession.getModel());
+        updateGameViews();
+        if (mGameMode == GameMode.TIMED) {
+            mCountdown.play();
+        }
+    }
+
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        if (mEndGameDialog != null) {
+            mEndGameDialog.dismiss();
+        }
+        if (mCountdown != null) {
+            mCountdown.release();
+        }
+    }
+
     @Override
     public void onStart() {
         super.onStart();
-        if (mGameMode == GameMode.TIMED) {
+        if (mSession.isOver()) {
+            // The game was restored after it ended
+            if (mEndGameDialog == null) {
+                endGame();
+            }
+        } else if (mGameMode == GameMode.TIMED) {
             mCountdown.play();
         }
+        if (mMetrics.isRunning()) {
+            showMetrics();
+        }
     }
 
     @Override
@@ -138,39 +291,43 @@ public class GameFragment extends Fragment implements View.OnTouchListener,
         if (mGameMode == GameMode.TIMED) {
             mCountdown.pause();
         }
+        mMetricsText.removeCallbacks(mMetricsUpdater);
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        if (item.getItemId() == R.id.action_hint) {
+            showHint();
+            return true;
+        } else if (item.getItemId() == R.id.action_metrics) {
+            toggleMetrics();
+            return true;
+        } else if (item.getItemId() == R.id.action_dump_metrics) {
+            dumpMetrics();
+            return true;
+        }
+        return super.onOptionsItemSelected(item);
     }
 
     /** Set up the playing area. */
     private void initGridView(View root) {
-        mGrid = (GridLayout) root.findViewById(R.id.game_grid);
+        ViewGroup frame = (ViewGroup) root.findViewById(R.id.game_grid_frame);
+        mGrid = BoardViewPool.acquire(getActivity(), mWidth, mHeight);
+        frame.addView(mGrid, new ViewGroup.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT,
+                ViewGroup.LayoutParams.WRAP_CONTENT));
         mGrid.setOnTouchListener(this);
-
-        Resources res = getResources();
-        int gridWidth = res.getDisplayMetrics().widthPixels
-                - res.getDimensionPixelSize(R.dimen.grid_horizontal_margin) * 2;
-        int cellSize = (int) (gridWidth / 6.0f);
-        Context context = getActivity();
-        for (int i = 0; i < WIDTH * HEIGHT; i++) {
-            // Create the block, assign a colour
-            BlockView block = new BlockView(context);
-            block.setColor(mModel.getBlock(i));
-
-            // Set the grid layout params
-            GridLayout.Spec rowSpec = GridLayout.spec(i / WIDTH);
-            GridLayout.Spec colSpec = GridLayout.spec(i % WIDTH);
-            GridLayout.LayoutParams layoutParams = new GridLayout.LayoutParams(rowSpec, colSpec);
-            layoutParams.width = cellSize;
-            layoutParams.height = cellSize;
-
-            // Add the block to the grid
-            mGrid.addView(block, layoutParams);
-        }
+        mGrid.setGridModel(mSession.getModel());
+        mSwipeTracker = new SwipeTracker(mGrid, new SwipeTracker.Callback() {
+            @Override
+            public void onCellEntered(int index) {
+                mSession.extendPath(index);
+            }
+        });
     }
 
     /** Set up the moves/time/score counters depending on the game mode */
     private void initStatsViews(View root) {
-        Typeface josefinSans =
-                Typeface.createFromAsset(getActivity().getAssets(), "fonts/JosefinSans-Regular.ttf");
+        Typeface josefinSans = mResourceCache.getRegularTypeface();
 
         mRemainingCount = (TextView) root.findViewById(R.id.game_remaining_counter);
         mRemainingCount.setTypeface(josefinSans);
@@ -182,15 +339,12 @@ public class GameFragment extends Fragment implements View.OnTouchListener,
         switch(mGameMode) {
             case MOVES:
                 remainingText.setText(R.string.game_moves_left);
-                mRemainingCount.setText(R.string.thirty);
                 break;
             case TIMED:
                 remainingText.setText(R.string.game_time);
-                mRemainingCount.setText(R.string.sixty);
                 break;
             case ENDLESS:
                 remainingText.setText(R.string.game_moves);
-                mRemainingCount.setText(R.string.zero);
                 break;
         }
 
@@ -198,6 +352,31 @@ public class GameFragment extends Fragment implements View.OnTouchListener,
         scoreText.setTypeface(josefinSans);
     }
 
+    /** Format a time remaining as whole seconds, rounded up so 0 is only shown at the end */
+    private static String formatSeconds(long millis) {
+        return String.valueOf((millis + 999) / 1000);
+    }
+
+    /** Show the counters, power-ups and hints for the current state of the game */
+    private void updateGameViews() {
+        switch(mGameMode) {
+            case MOVES:
+                mRemainingCount.setText(String.valueOf(mSession.getMovesRemaining()));
+                break;
+            case TIMED:
+                mRemainingCount.setText(formatSeconds(mCountdown.getRemaining()));
+                break;
+            case ENDLESS:
+                mRemainingCount.setText(String.valueOf(mSession.getMoves()));
+                break;
+        }
+        mScoreCount.setText(String.valueOf(mSession.getScore()));
+
+        mPowerup1Button.setEnabled(mSession.isPowerUpAvailable(PowerUp.MORE_MOVES));
+        mPowerup3Button.setEnabled(mSession.isPowerUpAvailable(PowerUp.EXPANDERS));
+        onActivePowerUpChanged(mSession.getActivePowerUp());
+    }
+
     private void initPowerups(View root) {
         mPowerup1Button = (ImageButton) root.findViewById(R.id.btn_more_moves);
         if (mGameMode == GameMode.TIMED) {
@@ -233,52 +412,31 @@ public class GameFragment extends Fragment implements View.OnTouchListener,
         mPowerupHint1 = (TextView) root.findViewById(R.id.powerup_hint1);
         mPowerupHint2 = (TextView) root.findViewById(R.id.powerup_hint2);
 
-        Typeface josefinSansBold =
-                Typeface.createFromAsset(getActivity().getAssets(), "fonts/JosefinSans-Bold.ttf");
+        Typeface josefinSansBold = mResourceCache.getBoldTypeface();
         mPowerupHint1.setTypeface(josefinSansBold);
         mPowerupHint2.setTypeface(josefinSansBold);
     }
 
-    private void showPowerupDialog(PowerUp powerUp) {
+    private void showPowerupDialog(final PowerUp powerUp) {
         int title;
         int message;
-        final Runnable action;
         switch (powerUp) {
             case MORE_MOVES:
                 title = mGameMode == GameMode.TIMED ? R.string.time_stop : R.string.more_moves;
                 message = mGameMode == GameMode.TIMED ?
                         R.string.time_stop_message : R.string.more_moves_message;
-                action = new Runnable() {
-                    @Override
-                    public void run() {
-                        toggleMoreMoves();
-                    }
-                };
                 break;
             case SHRINKERS:
                 title = R.string.shrinker;
                 message = R.string.shrinker_message;
-                action = new Runnable() {
-                    @Override
-                    public void run() {
-                        toggleShrinkers();
-                    }
-                };
                 break;
             case EXPANDERS:
                 title = R.string.expander;
                 message = R.string.expander_message;
-                action = new Runnable() {
-                    @Override
-                    public void run() {
-                        toggleExpanders();
-                    }
-                };
                 break;
             default: // Stupid, stupid, stupid Java switches
                 title = 0;
                 message = 0;
-                action = null;
                 break;
         }
 
@@ -288,7 +446,7 @@ public class GameFragment extends Fragment implements View.OnTouchListener,
                 .setPositiveButton(android.R.string.ok, new DialogInterface.OnClickListener() {
                     @Override
                     public void onClick(DialogInterface dialog, int which) {
-                        action.run();
+                        mSession.usePowerUp(powerUp);
                         dialog.dismiss();
                     }
                 })
@@ -301,304 +459,234 @@ public class GameFragment extends Fragment implements View.OnTouchListener,
                 });
         pauseCountdown();
         builder.show();*/
-        action.run();
-    }
-
-    private void toggleMoreMoves() {
-        if (mGameMode == GameMode.TIMED) {
-            mCountdown.pause(5000);
-        } else {
-            mMoves -= 5;
-            mRemainingCount.setText(String.valueOf(30 - mMoves));
-        }
-        mPowerup1Button.setEnabled(false); // Disable button
-    }
-
-    private void toggleShrinkers() {
-        if (mActivePowerUp == PowerUp.EXPANDERS) {
-            toggleExpanders();
-        }
-
-        if (mActivePowerUp != PowerUp.SHRINKERS) { // Activate
-            //mPowerup2Button.setTypeface(null, Typeface.BOLD);
-
-            mPowerupHint1.setText(R.string.shrinker_hint1);
-            mPowerupHint2.setText(R.string.shrinker_hint2);
-
-            mPowerupHint1.setVisibility(View.VISIBLE);
-            mPowerupHint2.setVisibility(View.VISIBLE);
-
-            mActivePowerUp = PowerUp.SHRINKERS;
-        } else { // Deactivate
-            //mPowerup2Button.setTypeface(null, Typeface.NORMAL);
-
-            mPowerupHint1.setVisibility(View.INVISIBLE);
-            mPowerupHint2.setVisibility(View.INVISIBLE);
-            mActivePowerUp = null;
-        }
-    }
-
-    private void toggleExpanders() {
-        if (mActivePowerUp == PowerUp.SHRINKERS) {
-            toggleShrinkers();
-        }
-
-        if (mActivePowerUp != PowerUp.EXPANDERS) { // Activate
-            //mPowerup3Button.setTypeface(null, Typeface.BOLD);
-
-            mPowerupHint1.setText(R.string.expander_hint1);
-            mPowerupHint1.setVisibility(View.VISIBLE);
-
-            mActivePowerUp = PowerUp.EXPANDERS;
-        } else { // Deactivate
-            //mPowerup3Button.setTypeface(null, Typeface.NORMAL);
-
-            mPowerupHint1.setVisibility(View.INVISIBLE);
-            mActivePowerUp = null;
-        }
+        mSession.usePowerUp(powerUp);
     }
 
     private void endGame() {
-        new AlertDialog.Builder(getActivity())
+        final int score = mSession.getScore();
+        final AlertDialog dialog = mEndGameDialog = new AlertDialog.Builder(getActivity())
                 .setTitle(R.string.end_game_dialog_title)
-                .setMessage(getString(R.string.end_game_dialog_message, mScore))
+                .setMessage(getString(R.string.end_game_dialog_message, score))
                 .setPositiveButton(android.R.string.ok, new DialogInterface.OnClickListener() {
                     @Override
                     public void onClick(DialogInterface dialog, int which) {
                         getActivity().finish();
                     }
                 })
+                .setNegativeButton(R.string.end_game_dialog_play_again,
+                        new DialogInterface.OnClickListener() {
+                    @Override
+                    public void onClick(DialogInterface dialog, int which) {
+                        playAgain();
+                    }
+                })
                 .setIcon(android.R.drawable.ic_dialog_info)
                 .setCancelable(false)
                 .show();
-        mScoresDatabase.saveScoreAsync(mScore);
-    }
 
-    /** Add {@code points} to the score and update UI accordingly */
-    private void increaseScore(int points) {
-        mScore += points;
-        mScoreCount.setText(String.valueOf(mScore));
-    }
+        // Get the next game ready while the player reads their score
+        mNextSession = createSession();
 
-    /** Increment the moves count by 1. Update UI accordingly. */
-    private void incrementMoves() {
-        mMoves++;
-        if (mGameMode == GameMode.MOVES) {
-            int remaining = 30 - mMoves;
-            if (remaining > 0) {
-                mRemainingCount.setText(String.valueOf(remaining));
-            } else {
-                endGame();
-            }
-        } else if (mGameMode == GameMode.ENDLESS) {
-            mRemainingCount.setText(String.valueOf(mMoves));
+        if (mScoreSaved || mRecorder == null) {
+            return;
         }
-    }
+        mScoreSaved = true;
 
-    private boolean isPowerup(float x, float y) {
-        if (mActivePowerUp == PowerUp.SHRINKERS) {
-            int index = calculateGridIndex(x, y);
-            mModel.removeBlock(index);
-            incrementMoves();
-            increaseScore(1);
-            toggleShrinkers();
-            return true;
-        } else if (mActivePowerUp == PowerUp.EXPANDERS) {
-            int index = calculateGridIndex(x, y);
-            int score = mModel.removeColor(mModel.getBlock(index));
-            increaseScore(score);
-            incrementMoves();
-            toggleExpanders();
-            mPowerup3Button.setEnabled(false);
-            return true;
-        }
-        return false;
+        // Only scores that the rules can reproduce from the moves that were made are kept; the
+        // writer thread replays the recording before saving
+        mScoresDatabase.saveScoreAsync(score, mGameMode, mSession.getMovesMade(),
+                mRecorder.toByteArray(), new ScoresDatabase.SaveCallback() {
+            @Override
+            public void onScoreSaved(long id) {
+                if (id >= 0 && isAdded()) {
+                    dialog.setMessage(getString(R.string.end_game_dialog_message_saved, score));
+                }
+            }
+        });
     }
 
-    private void beginPath(float x, float y) {
-        int index = calculateGridIndex(x, y);
-        if (index >= 0 && index < mGrid.getChildCount()) {
-            selectBlock(index);
-            mPath.add(index);
+    /** Start or stop recording metrics, showing them over the board while they are recorded */
+    private void toggleMetrics() {
+        if (mMetrics.isRunning()) {
+            mMetrics.stop();
+            mMetricsText.removeCallbacks(mMetricsUpdater);
+            mMetricsText.setVisibility(View.GONE);
+        } else {
+            mMetrics.reset();
+            mMetrics.start();
+            showMetrics();
         }
     }
 
-    /** Mark a block as selected and link it up */
-    private void selectBlock(int index) {
-        int lastIndex = getLastPathIndex();
-        if (lastIndex >= 0) {
-            BlockView.PathDirection src = getPathDirection(index, lastIndex);
-            BlockView block = (BlockView) mGrid.getChildAt(index);
-            block.select(src);
+    private void showMetrics() {
+        mMetricsText.setVisibility(View.VISIBLE);
+        mMetricsText.removeCallbacks(mMetricsUpdater);
+        mMetricsUpdater.run();
+    }
 
-            BlockView.PathDirection dest = getPathDirection(lastIndex, index);
-            BlockView lastBlock = (BlockView) mGrid.getChildAt(lastIndex);
-            lastBlock.connectNext(dest);
-        } else {
-            BlockView block = (BlockView) mGrid.getChildAt(index);
-            block.select(null);
+    private void dumpMetrics() {
+        try {
+            File file = mMetrics.dump(getActivity().getExternalFilesDir(null));
+            Log.i(TAG, "Metrics written to " + file);
+        } catch (IOException e) {
+            Log.e(TAG, "Couldn't write metrics", e);
         }
     }
 
-    /** Get the index at the head of the path */
-    private int getLastPathIndex() {
-        if (mPath.isEmpty()) {
-            return -1;
+    /** Highlight the best move on the board */
+    private void showHint() {
+        MoveAnalyzer.Move move = mSession.findHint();
+        if (move != null) {
+            mGrid.showHint(move.path);
         }
-        return mPath.get(mPath.size() - 1);
     }
 
-    private BlockView.PathDirection getPathDirection(int srcIndex, int destIndex) {
-        int srcX = srcIndex % WIDTH;
-        int destX = destIndex % WIDTH;
+    private BoardView.PathDirection getPathDirection(int srcIndex, int destIndex) {
+        int srcX = srcIndex % mWidth;
+        int destX = destIndex % mWidth;
         if (destX < srcX) {
-            return BlockView.PathDirection.LEFT;
+            return BoardView.PathDirection.LEFT;
         } else if (destX > srcX) {
-            return BlockView.PathDirection.RIGHT;
+            return BoardView.PathDirection.RIGHT;
         }
 
-        int srcY = srcIndex / WIDTH;
-        int destY = destIndex / WIDTH;
+        int srcY = srcIndex / mWidth;
+        int destY = destIndex / mWidth;
         if (destY < srcY) {
-            return BlockView.PathDirection.UP;
+            return BoardView.PathDirection.UP;
         } else if (destY > srcY) {
-            return BlockView.PathDirection.DOWN;
+            return BoardView.PathDirection.DOWN;
         }
 
         return null;
     }
 
-    private void movePath(float x, float y) {
-        if (mPath.isEmpty()
-                || mSquare
-                || mLastHitRect.contains((int) x, (int) y)) {
-            return;
-        }
-
-        // Get the index in the ViewGroup and check that it's valid
+    private void beginPath(float x, float y) {
         int index = calculateGridIndex(x, y);
-        if (index < 0 || index >= mGrid.getChildCount()) {
-            return;
+        if (index >= 0) {
+            mSession.beginPath(index);
         }
+    }
 
-        // Get the actual block view and save its hit rect
-        BlockView block = (BlockView) mGrid.getChildAt(index);
-        block.getHitRect(mLastHitRect);
+    /** Find the index of the block in the grid given a touch position */
+    private int calculateGridIndex(float x, float y) {
+        return mGrid.getBlockIndex(x, y);
+    }
 
-        // Check if already selected
-        int pathSize = mPath.size();
-        int lastIndex = mPath.get(pathSize - 1);
-        BlockView lastBlock = (BlockView) mGrid.getChildAt(lastIndex);
-        if (!block.isSelected()) {
-            // If not, and new block is valid link, add to path
-            if (block.getColor() == lastBlock.getColor() && isAdjacent(index, lastIndex)) {
-                selectBlock(index);
-                mPath.add(index);
-            }
-        } else if (pathSize >= 2 && block != lastBlock) {
-            // If so, either backtracking or making a closed path
-            int lastLastIndex = mPath.get(pathSize - 2);
-            if (index == lastLastIndex) {
-                // Backtracking: deselect the last block and remove from path
-                lastBlock.deselect();
-                mPath.remove(pathSize - 1);
-
-                BlockView lastLastBlock = (BlockView) mGrid.getChildAt(lastLastIndex);
-                lastLastBlock.disconnectNext();
-            } else if (block.getColor() == lastBlock.getColor() && isAdjacent(index, lastIndex)) {
-                block.select(getPathDirection(index, lastIndex));
-                lastBlock.connectNext(getPathDirection(lastIndex, index));
-                mSquare = true;
+    @Override
+    public boolean onTouch(View v, MotionEvent event) {
+        mMetrics.onInput(event);
+        mGestureDetector.onTouchEvent(event);
+        final int action = event.getAction();
+        if (action == MotionEvent.ACTION_DOWN) {
+            mGrid.clearHint();
+            int index = calculateGridIndex(event.getX(), event.getY());
+            if (index < 0 || !mSession.tap(index)) {
+                beginPath(event.getX(), event.getY());
+                mSwipeTracker.down(event.getX(), event.getY());
             }
+        } else if (action == MotionEvent.ACTION_MOVE) {
+            mSwipeTracker.move(event);
+        } else if (action == MotionEvent.ACTION_UP) {
+            mSwipeTracker.up();
+            mSession.endPath();
         }
+        mMetrics.onInputHandled();
+
+        return true;
     }
 
-    /** Check if two indices are adjacent in the grid */
-    private static boolean isAdjacent(int index1, int index2) {
-        if (index1 > index2) {
-            int temp = index1;
-            index1 = index2;
-            index2 = temp;
+    @Override
+    public void onBlocksChanged(int[] dirtyDepths) {
+        if (mGrid != null) {
+            mGrid.animateBlocks(dirtyDepths);
         }
+        mMetrics.onStateChanged();
+    }
 
-        return index1 == index2 - 1 && index2 % WIDTH != 0
-                || index1 == index2 - WIDTH;
+    @Override
+    public void onPathExtended(int index, int previous) {
+        mMetrics.onStateChanged();
+        if (previous >= 0) {
+            mGrid.select(index, getPathDirection(index, previous));
+            mGrid.connectNext(previous, getPathDirection(previous, index));
+        } else {
+            mGrid.select(index, null);
+        }
     }
 
-    /** Find the index of the child view in the block given a touch position */
-    private int calculateGridIndex(float x, float y) {
-        int col = (int) (WIDTH * x / mGrid.getWidth());
-        int row = (int) (HEIGHT * y / mGrid.getHeight());
-        return col + WIDTH * row;
+    @Override
+    public void onPathBacktracked(int removed, int last) {
+        mMetrics.onStateChanged();
+        mGrid.deselect(removed);
+        mGrid.disconnectNext(last);
     }
 
-    private void endPath(float x, float y) {
-        if (mPath.isEmpty()) {
-            return;
-        }
+    @Override
+    public void onPathClosed(int index, int previous) {
+        mMetrics.onStateChanged();
+        mGrid.select(index, getPathDirection(index, previous));
+        mGrid.connectNext(previous, getPathDirection(previous, index));
+    }
 
-        if (!mSquare) {
-            int pathSize = mPath.size();
-            if (pathSize >= 2) {
-                // Have a path, remove the blocks
-                removePath();
-                incrementMoves();
-            } else if (pathSize == 1) {
-                resetPath();
-            }
-        } else {
-            // Have a closed path, remove all blocks of same color
-            removeColor();
-            incrementMoves();
-            mSquare = false;
-        }
+    @Override
+    public void onBlockDeselected(int index) {
+        mGrid.deselect(index);
     }
 
-    /** Remove all blocks in the path from the grid */
-    private void removePath() {
-        int removals = mModel.removePath(mPath);
-        increaseScore(removals);
-        resetPath();
+    @Override
+    public void onScoreChanged(int score) {
+        mScoreCount.setText(String.valueOf(score));
     }
 
-    /** Remove all blocks that are the same colour as blocks in the path */
-    private void removeColor() {
-        BlockView block = (BlockView) mGrid.getChildAt(mPath.get(0));
-        int removals = mModel.removeColor(block.getColor());
-        increaseScore(removals);
-        resetPath();
+    @Override
+    public void onMovesChanged(int moves) {
+        if (mGameMode == GameMode.MOVES) {
+            mRemainingCount.setText(String.valueOf(mSession.getMovesRemaining()));
+        } else if (mGameMode == GameMode.ENDLESS) {
+            mRemainingCount.setText(String.valueOf(moves));
+        }
     }
 
-    /** Set all blocks in path back to unselected state, clear the path */
-    private void resetPath() {
-        for (Integer index : mPath) {
-            BlockView block = (BlockView) mGrid.getChildAt(index);
-            block.deselect();
+    @Override
+    public void onActivePowerUpChanged(PowerUp powerUp) {
+        if (powerUp == PowerUp.SHRINKERS) {
+            mPowerupHint1.setText(R.string.shrinker_hint1);
+            mPowerupHint2.setText(R.string.shrinker_hint2);
+
+            mPowerupHint1.setVisibility(View.VISIBLE);
+            mPowerupHint2.setVisibility(View.VISIBLE);
+        } else if (powerUp == PowerUp.EXPANDERS) {
+            mPowerupHint1.setText(R.string.expander_hint1);
+
+            mPowerupHint1.setVisibility(View.VISIBLE);
+            mPowerupHint2.setVisibility(View.INVISIBLE);
+        } else {
+            mPowerupHint1.setVisibility(View.INVISIBLE);
+            mPowerupHint2.setVisibility(View.INVISIBLE);
         }
-        mPath.clear();
     }
 
     @Override
-    public boolean onTouch(View v, MotionEvent event) {
-        mGestureDetector.onTouchEvent(event);
-        final int action = event.getAction();
-        if (action == MotionEvent.ACTION_DOWN) {
-            if (!isPowerup(event.getX(), event.getY())) {
-                beginPath(event.getX(), event.getY());
-            }
-        } else if (action == MotionEvent.ACTION_MOVE) {
-            movePath(event.getX(), event.getY());
-        } else if (action == MotionEvent.ACTION_UP) {
-            endPath(event.getX(), event.getY());
+    public void onPowerUpUsed(PowerUp powerUp) {
+        if (powerUp == PowerUp.MORE_MOVES) {
+            mPowerup1Button.setEnabled(false); // Disable button
+        } else if (powerUp == PowerUp.EXPANDERS) {
+            mPowerup3Button.setEnabled(false);
         }
+    }
 
-        return true;
+    @Override
+    public void onTimeStop(long duration) {
+        mCountdown.freeze(duration);
     }
 
     @Override
-    public void onBlockChange(int index, int newColor) {
-        BlockView block = (BlockView) mGrid.getChildAt(index);
-        block.setColor(newColor);
+    public void onGameOver(int score) {
+        if (mGameMode == GameMode.TIMED) {
+            mCountdown.pause();
+        }
+        endGame();
     }
 
 }
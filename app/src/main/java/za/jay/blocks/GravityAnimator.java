@@ -0,0 +1,140 @@
+package za.jay.blocks;
+
+import android.view.Choreographer;
+
+import za.jay.blocks.engine.GridModel;
+
+/**
+ * Animates blocks falling into place after the blocks below them are removed. The model is
+ * updated immediately so the animation is purely visual: each cell keeps the distance its block
+ * still has to fall and a single {@link Choreographer} callback advances every falling block once
+ * per frame. Nothing is allocated once the animator has been created.
+ */
+public class GravityAnimator implements Choreographer.FrameCallback {
+
+    /** Time taken to fall a single row. Longer falls take time proportional to the square root */
+    private static final long ROW_FALL_NANOS = 120L * 1000 * 1000;
+
+    private final BoardView mBoard;
+    private final int mColumns;
+
+    /** For each cell, the distance in rows above its cell that its block started falling from */
+    private final float[] mStartOffsets;
+    /** For each cell, the distance in rows above its cell that its block is now */
+    private final float[] mOffsets;
+    /** For each cell, the frame time its block started falling, or 0 if it starts next frame */
+    private final long[] mStartTimes;
+    private final long[] mDurations;
+
+    private boolean mRunning;
+
+    public GravityAnimator(BoardView board, int columns, int rows) {
+        mBoard = board;
+        mColumns = columns;
+
+        int count = columns * rows;
+        mStartOffsets = new float[count];
+        mOffsets = new float[count];
+        mStartTimes = new long[count];
+        mDurations = new long[count];
+    }
+
+    /**
+     * Start the blocks that fell in an operation on the model falling. Blocks that were still
+     * falling from an earlier operation carry on from where they are now. Must be called from
+     * {@link GridModel.GridBatchChangeListener#onBlocksChanged(int[])}.
+     */
+    public void animateFalls(GridModel model, int[] dirtyDepths) {
+        boolean falling = false;
+        for (int col = 0; col < mColumns; col++) {
+            // A block only ever moves down its column, so working from the bottom up each block's
+            // old cell is read before it is overwritten
+            for (int row = dirtyDepths[col] - 1; row >= 0; row--) {
+                int index = col + row * mColumns;
+                int distance = model.getFallDistance(index);
+                if (distance == 0) {
+                    continue;
+                }
+
+                int srcRow = row - distance;
+                float offset = srcRow >= 0 ? mOffsets[col + srcRow * mColumns] : 0;
+                start(index, offset + distance);
+                falling = true;
+            }
+        }
+
+        if (falling && !mRunning) {
+            mRunning = true;
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+    }
+
+    private void start(int index, float offset) {
+        mStartOffsets[index] = offset;
+        mOffsets[index] = offset;
+        mStartTimes[index] = 0;
+        mDurations[index] = (long) (ROW_FALL_NANOS * Math.sqrt(offset));
+    }
+
+    /** Stop all blocks falling, leaving them in their cells */
+    public void cancel() {
+        if (mRunning) {
+            Choreographer.getInstance().removeFrameCallback(this);
+            mRunning = false;
+        }
+        for (int i = 0; i < mOffsets.length; i++) {
+            mOffsets[i] = 0;
+        }
+    }
+
+    public boolean isRunning() {
+        return mRunning;
+    }
+
+    /** Get the distance in rows above its cell that the block at an index should be drawn */
+    public float getOffset(int index) {
+        return mOffsets[index];
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        // Track the region covering the blocks that moved so it can be redrawn in one call
+        int firstCol = mColumns;
+        int lastCol = -1;
+        int lastRow = -1;
+        boolean falling = false;
+        for (int i = 0; i < mOffsets.length; i++) {
+            if (mOffsets[i] == 0) {
+                continue;
+            }
+
+            if (mStartTimes[i] == 0) {
+                mStartTimes[i] = frameTimeNanos;
+            }
+            long elapsed = frameTimeNanos - mStartTimes[i];
+            if (elapsed >= mDurations[i]) {
+                mOffsets[i] = 0;
+            } else {
+                // Accelerate as if under gravity
+                float t = (float) elapsed / mDurations[i];
+                mOffsets[i] = mStartOffsets[i] * (1 - t * t);
+                falling = true;
+            }
+
+            int col = i % mColumns;
+            firstCol = Math.min(firstCol, col);
+            lastCol = Math.max(lastCol, col);
+            lastRow = Math.max(lastRow, i / mColumns);
+        }
+
+        if (lastCol >= 0) {
+            mBoard.invalidateColumns(firstCol, lastCol, lastRow);
+        }
+
+        if (falling) {
+            Choreographer.getInstance().postFrameCallback(this);
+        } else {
+            mRunning = false;
+        }
+    }
+}
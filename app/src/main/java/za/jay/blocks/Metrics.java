@@ -0,0 +1,194 @@
+package za.jay.blocks;
+
+import android.view.Choreographer;
+import android.view.MotionEvent;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+import za.jay.blocks.engine.GridModel;
+import za.jay.blocks.engine.Histogram;
+
+/**
+ * Measures how responsive the board is. While running it records:
+ * <ul>
+ *     <li>the time from a touch event to the game state changing in response to it</li>
+ *     <li>the time from a touch event to the board being drawn with the change</li>
+ *     <li>the time between consecutive frames</li>
+ *     <li>the time taken by each {@link GridModel} operation</li>
+ * </ul>
+ * Everything is recorded into fixed size {@link Histogram}s so recording never allocates. The
+ * metrics are shared by the whole process and must only be used from the main thread.
+ */
+public class Metrics implements Choreographer.FrameCallback, GridModel.OperationTimer {
+
+    /** Latencies and frame times are recorded in microseconds, up to a minute */
+    private static final long MAX_MICROS = 60L * 1000 * 1000;
+    /** Operation times are recorded in nanoseconds, up to 10 seconds */
+    private static final long MAX_NANOS = 10L * 1000 * 1000 * 1000;
+
+    private static final double[] DUMP_PERCENTILES = { 50, 75, 90, 95, 99, 99.9, 99.99, 100 };
+
+    private static Metrics sInstance;
+
+    private final Histogram mInputToUpdate = new Histogram(MAX_MICROS);
+    private final Histogram mInputToFrame = new Histogram(MAX_MICROS);
+    private final Histogram mFrameTimes = new Histogram(MAX_MICROS);
+    private final Histogram[] mOperationTimes;
+
+    private boolean mRunning;
+    private long mLastFrameTime;
+    /** Time of the touch event being handled, or 0 if there isn't one */
+    private long mInputTime;
+    /** Time of the earliest touch event whose changes haven't been drawn yet, or 0 */
+    private long mUndrawnInputTime;
+
+    public static Metrics getInstance() {
+        if (sInstance == null) {
+            sInstance = new Metrics();
+        }
+        return sInstance;
+    }
+
+    private Metrics() {
+        GridModel.Operation[] operations = GridModel.Operation.values();
+        mOperationTimes = new Histogram[operations.length];
+        for (int i = 0; i < operations.length; i++) {
+            mOperationTimes[i] = new Histogram(MAX_NANOS);
+        }
+    }
+
+    /** Start recording, including watching every frame */
+    public void start() {
+        if (!mRunning) {
+            mRunning = true;
+            mLastFrameTime = 0;
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+    }
+
+    public void stop() {
+        if (mRunning) {
+            mRunning = false;
+            Choreographer.getInstance().removeFrameCallback(this);
+            mInputTime = 0;
+            mUndrawnInputTime = 0;
+        }
+    }
+
+    public boolean isRunning() {
+        return mRunning;
+    }
+
+    public void reset() {
+        mInputToUpdate.reset();
+        mInputToFrame.reset();
+        mFrameTimes.reset();
+        for (Histogram histogram : mOperationTimes) {
+            histogram.reset();
+        }
+    }
+
+    /** A touch event is about to be handled */
+    public void onInput(MotionEvent event) {
+        if (mRunning) {
+            // Event times are on the uptime clock, which like System.nanoTime() is the monotonic
+            // clock on Android
+            mInputTime = event.getEventTime() * 1000000;
+        }
+    }
+
+    /** The touch event has been handled, later changes aren't in response to it */
+    public void onInputHandled() {
+        mInputTime = 0;
+    }
+
+    /** The game state changed in a way that will be shown on the board */
+    public void onStateChanged() {
+        if (mInputTime == 0) {
+            return;
+        }
+        mInputToUpdate.record((System.nanoTime() - mInputTime) / 1000);
+        if (mUndrawnInputTime == 0) {
+            mUndrawnInputTime = mInputTime;
+        }
+    }
+
+    /** The board has been drawn. It is shown on screen at the next vsync. */
+    public void onFrameDrawn() {
+        if (mUndrawnInputTime != 0) {
+            mInputToFrame.record((System.nanoTime() - mUndrawnInputTime) / 1000);
+            mUndrawnInputTime = 0;
+        }
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        if (!mRunning) {
+            return;
+        }
+        if (mLastFrameTime != 0) {
+            mFrameTimes.record((frameTimeNanos - mLastFrameTime) / 1000);
+        }
+        mLastFrameTime = frameTimeNanos;
+        Choreographer.getInstance().postFrameCallback(this);
+    }
+
+    @Override
+    public void onOperationTimed(GridModel.Operation operation, long nanos) {
+        if (mRunning) {
+            mOperationTimes[operation.ordinal()].record(nanos);
+        }
+    }
+
+    /** Summarise each histogram on a line of its own */
+    public String summarise() {
+        StringBuilder summary = new StringBuilder();
+        summary.append("input > update ms: ").append(mInputToUpdate.summarise(1000)).append('\n');
+        summary.append("input > frame ms: ").append(mInputToFrame.summarise(1000)).append('\n');
+        summary.append("frame ms: ").append(mFrameTimes.summarise(1000));
+        GridModel.Operation[] operations = GridModel.Operation.values();
+        for (int i = 0; i < operations.length; i++) {
+            if (mOperationTimes[i].getTotalCount() > 0) {
+                summary.append('\n').append(operations[i]).append(" us: ")
+                        .append(mOperationTimes[i].summarise(1000));
+            }
+        }
+        return summary.toString();
+    }
+
+    /**
+     * Write the summary and a table of percentiles of each histogram to a new file in
+     * {@code directory}.
+     * @return the file written
+     */
+    public File dump(File directory) throws IOException {
+        File file = new File(directory, "metrics-" + System.currentTimeMillis() + ".txt");
+        Writer writer = new FileWriter(file);
+        try {
+            writer.write(summarise());
+            writer.write("\n\n");
+            dumpPercentiles(writer, "input > update us", mInputToUpdate);
+            dumpPercentiles(writer, "input > frame us", mInputToFrame);
+            dumpPercentiles(writer, "frame us", mFrameTimes);
+            GridModel.Operation[] operations = GridModel.Operation.values();
+            for (int i = 0; i < operations.length; i++) {
+                dumpPercentiles(writer, operations[i] + " ns", mOperationTimes[i]);
+            }
+        } finally {
+            writer.close();
+        }
+        return file;
+    }
+
+    private static void dumpPercentiles(Writer writer, String name, Histogram histogram)
+            throws IOException {
+        writer.write(name + " (n=" + histogram.getTotalCount() + ")\n");
+        for (double percentile : DUMP_PERCENTILES) {
+            writer.write(String.format("  %7.2f%% %d%n", percentile,
+                    histogram.getValueAtPercentile(percentile)));
+        }
+    }
+}
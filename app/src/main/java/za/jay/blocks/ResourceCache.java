@@ -0,0 +1,103 @@
+package za.jay.blocks;
+
+import android.content.Context;
+import android.graphics.Paint;
+import android.graphics.Typeface;
+import android.os.Process;
+
+/**
+ * Resources shared by every game, loaded once per process: the typefaces, which are parsed from
+ * their font files, the block colours and a fill paint for each colour. Everything is loaded
+ * lazily on first use, or ahead of time on a background thread by {@link #preload()} so that
+ * starting a game does no parsing.
+ */
+public class ResourceCache {
+
+    public static final String FONT_REGULAR = "fonts/JosefinSans-Regular.ttf";
+    public static final String FONT_BOLD = "fonts/JosefinSans-Bold.ttf";
+
+    private static ResourceCache sInstance;
+
+    private final Context mContext;
+    private boolean mPreloadStarted;
+
+    /** Guards the typefaces so that parsing them doesn't hold up getting the colours */
+    private final Object mTypefaceLock = new Object();
+    private Typeface mRegularTypeface;
+    private Typeface mBoldTypeface;
+    private int[] mBlockColours;
+    private Paint[] mBlockPaints;
+
+    public static synchronized ResourceCache getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new ResourceCache(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private ResourceCache(Context context) {
+        mContext = context;
+    }
+
+    /** Start loading everything on a background thread, if it hasn't been started already */
+    public synchronized void preload() {
+        if (mPreloadStarted) {
+            return;
+        }
+        mPreloadStarted = true;
+
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                getBlockPaints();
+                getRegularTypeface();
+                getBoldTypeface();
+            }
+        }, "ResourcePreload").start();
+    }
+
+    public Typeface getRegularTypeface() {
+        synchronized (mTypefaceLock) {
+            if (mRegularTypeface == null) {
+                mRegularTypeface = Typeface.createFromAsset(mContext.getAssets(), FONT_REGULAR);
+            }
+            return mRegularTypeface;
+        }
+    }
+
+    public Typeface getBoldTypeface() {
+        synchronized (mTypefaceLock) {
+            if (mBoldTypeface == null) {
+                mBoldTypeface = Typeface.createFromAsset(mContext.getAssets(), FONT_BOLD);
+            }
+            return mBoldTypeface;
+        }
+    }
+
+    /** Get the colours blocks can be. The array is shared and must not be modified. */
+    public synchronized int[] getBlockColours() {
+        if (mBlockColours == null) {
+            mBlockColours = mContext.getResources().getIntArray(R.array.block_colours);
+        }
+        return mBlockColours;
+    }
+
+    /**
+     * Get an anti-aliased fill paint for each block colour, in the same order as
+     * {@link #getBlockColours()}. The paints are shared and must not be modified.
+     */
+    public synchronized Paint[] getBlockPaints() {
+        if (mBlockPaints == null) {
+            int[] colours = getBlockColours();
+            mBlockPaints = new Paint[colours.length];
+            for (int i = 0; i < colours.length; i++) {
+                Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+                paint.setStyle(Paint.Style.FILL);
+                paint.setColor(colours[i]);
+                mBlockPaints[i] = paint;
+            }
+        }
+        return mBlockPaints;
+    }
+}
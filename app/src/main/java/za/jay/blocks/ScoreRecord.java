@@ -0,0 +1,62 @@
+package za.jay.blocks;
+
+import java.util.Date;
+
+import za.jay.blocks.engine.GameMode;
+
+/**
+ * A single saved score. Scores saved before the database recorded the mode and moves have no
+ * mode and unknown moves.
+ */
+public class ScoreRecord {
+
+    /** Moves of a score saved before moves were recorded */
+    public static final int UNKNOWN_MOVES = -1;
+
+    private final long mId;
+    private final int mScore;
+    private final long mTimestamp;
+    private final GameMode mMode;
+    private final int mMoves;
+
+    public ScoreRecord(long id, int score, long timestamp, GameMode mode, int moves) {
+        mId = id;
+        mScore = score;
+        mTimestamp = timestamp;
+        mMode = mode;
+        mMoves = moves;
+    }
+
+    /** Get the row id, which together with the timestamp orders scores uniquely */
+    public long getId() {
+        return mId;
+    }
+
+    public int getScore() {
+        return mScore;
+    }
+
+    /** Get the time the score was saved in milliseconds since the epoch */
+    public long getTimestamp() {
+        return mTimestamp;
+    }
+
+    public Date getDate() {
+        return new Date(mTimestamp);
+    }
+
+    /** Get the mode the score was made in, or null if it isn't known */
+    public GameMode getMode() {
+        return mMode;
+    }
+
+    /** Get the number of moves made, or {@link #UNKNOWN_MOVES} */
+    public int getMoves() {
+        return mMoves;
+    }
+
+    @Override
+    public String toString() {
+        return getDate() + " - " + mScore + (mMode != null ? " (" + mMode + ")" : "");
+    }
+}
@@ -0,0 +1,88 @@
+package za.jay.blocks;
+
+import java.util.TimeZone;
+
+import za.jay.blocks.engine.Histogram;
+
+/**
+ * Summary statistics of the scores of one mode, or of every score. They are read from the
+ * summary tables kept up to date by {@link ScoresDatabase} rather than computed from the history.
+ */
+public class ScoreStatistics {
+
+    private static final long MILLIS_PER_DAY = 24 * 60 * 60 * 1000;
+
+    /** Highest score the histogram of scores can count */
+    static final long MAX_SCORE = Integer.MAX_VALUE;
+
+    private final long mCount;
+    private final long mSum;
+    private final int mMin;
+    private final int mMax;
+    private final long mLastDay;
+    private final int mStreak;
+    private final int mBestStreak;
+    private final Histogram mHistogram;
+
+    ScoreStatistics(long count, long sum, int min, int max, long lastDay, int streak,
+            int bestStreak, Histogram histogram) {
+        mCount = count;
+        mSum = sum;
+        mMin = min;
+        mMax = max;
+        mLastDay = lastDay;
+        mStreak = streak;
+        mBestStreak = bestStreak;
+        mHistogram = histogram;
+    }
+
+    /** Statistics for when there are no scores */
+    static ScoreStatistics empty() {
+        return new ScoreStatistics(0, 0, 0, 0, 0, 0, 0, new Histogram(MAX_SCORE));
+    }
+
+    /** Get the local day of a timestamp, counted in days since the epoch */
+    static long dayOf(long timestamp) {
+        return (timestamp + TimeZone.getDefault().getOffset(timestamp)) / MILLIS_PER_DAY;
+    }
+
+    public long getCount() {
+        return mCount;
+    }
+
+    public double getMean() {
+        return mCount > 0 ? (double) mSum / mCount : 0;
+    }
+
+    public int getMin() {
+        return mMin;
+    }
+
+    public int getBest() {
+        return mMax;
+    }
+
+    /**
+     * Get the score that {@code percentile} percent of scores are at or below, to within 1 part
+     * in 64.
+     */
+    public int getPercentile(double percentile) {
+        return (int) Math.min(mHistogram.getValueAtPercentile(percentile), mMax);
+    }
+
+    public int getMedian() {
+        return getPercentile(50);
+    }
+
+    /**
+     * Get the number of consecutive days, up to today, with at least one game. A streak is kept
+     * until the end of the day after the last game.
+     */
+    public int getCurrentStreak() {
+        return dayOf(System.currentTimeMillis()) - mLastDay <= 1 ? mStreak : 0;
+    }
+
+    public int getBestStreak() {
+        return mBestStreak;
+    }
+}
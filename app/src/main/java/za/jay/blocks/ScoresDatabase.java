@@ -1,72 +1,350 @@
 package za.jay.blocks;
 
-import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
-import android.os.AsyncTask;
+import android.database.sqlite.SQLiteStatement;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
 import android.util.Log;
 
-import java.text.DateFormat;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.Date;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.List;
-import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import za.jay.blocks.engine.GameMode;
+import za.jay.blocks.engine.GameReplayer;
+import za.jay.blocks.engine.Histogram;
 
 /**
  * Created by jamie on 2014/03/02.
+ *
+ * There is a single instance per process. Scores are written by a single background thread that
+ * inserts everything queued since its last write in one transaction, using a compiled statement.
+ * Scores that come with a recording of their game are replayed on the writer thread first and
+ * only written if the replay reaches the same score.
+ * The database uses write-ahead logging so reads don't wait on writes.
+ *
+ * The top scores are cached in memory. The cache is loaded once on the writer thread and then
+ * kept up to date by each write, so reading it never needs a query.
+ *
+ * The score history is read a page at a time on a separate reader thread, newest first. Pages
+ * are found by keyset on the indexed timestamp and row id rather than by offset, so reading any
+ * page costs the same and memory use is bounded by the page size however many scores there are.
+ *
+ * Statistics for each mode and for all scores are kept in summary tables: one row of totals and
+ * streaks, and one row per histogram bucket with scores in it. They are updated in the same
+ * transaction as each score is inserted, so reading them touches a few rows instead of the
+ * whole history.
  */
 public class ScoresDatabase extends SQLiteOpenHelper {
 
     private static final String TAG = "ScoresDatabase";
     private static final boolean DEBUG = false;
 
-    private static final int VERSION = 1;
+    /**
+     * Version 2: the timestamp is stored as milliseconds since the epoch and each score records
+     * the game mode and the number of moves made.
+     * Version 3: summary statistics tables.
+     */
+    private static final int VERSION = 3;
     private static final String NAME = "scores";
 
     private static final String TABLE_NAME = "scores";
     private static final String KEY_SCORE = "score";
     private static final String KEY_TIMESTAMP = "timestamp";
+    private static final String KEY_MODE = "mode";
+    private static final String KEY_MOVES = "moves";
+    private static final String INDEX_SCORE = "scores_score";
+    private static final String INDEX_TIMESTAMP = "scores_timestamp";
+
+    private static final String STATS_TABLE_NAME = "stats";
+    private static final String BUCKETS_TABLE_NAME = "stats_buckets";
+    private static final String KEY_COUNT = "count";
+    private static final String KEY_SUM = "sum";
+    private static final String KEY_MIN = "min";
+    private static final String KEY_MAX = "max";
+    private static final String KEY_LAST_DAY = "last_day";
+    private static final String KEY_STREAK = "streak";
+    private static final String KEY_BEST_STREAK = "best_streak";
+    private static final String KEY_BUCKET = "bucket";
+    /** The mode key of the statistics of every score, including those with no mode */
+    private static final String STATS_ALL = "";
+
+    private static final String[] RECORD_COLUMNS =
+            { "rowid", KEY_SCORE, KEY_TIMESTAMP, KEY_MODE, KEY_MOVES };
+    private static final String HISTORY_ORDER = KEY_TIMESTAMP + " DESC, rowid DESC";
+    /** Selects the scores after a given score in history order */
+    private static final String HISTORY_AFTER = KEY_TIMESTAMP + " < ? OR ("
+            + KEY_TIMESTAMP + " = ? AND rowid < ?)";
+
+    /** Number of scores read at a time when visiting the whole history */
+    private static final int VISIT_PAGE_SIZE = 256;
 
-    private static final DateFormat SQL_DATE_FORMAT = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+    /** Number of top scores kept in memory */
+    private static final int TOP_SCORES = 10;
+
+    private static ScoresDatabase sInstance;
+
+    private final ExecutorService mWriter;
+    private final ExecutorService mReader;
+    private final Queue<PendingScore> mPendingScores = new ConcurrentLinkedQueue<PendingScore>();
+    private final AtomicBoolean mFlushScheduled = new AtomicBoolean();
+    private final Runnable mFlush = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    /** Only used on the writer thread */
+    private SQLiteStatement mInsertStatement;
+    private StatisticsWriter mStatisticsWriter;
+
+    /** The highest scores in descending order, guarded by itself */
+    private final int[] mTopScores = new int[TOP_SCORES];
+    private int mTopScoreCount;
+    private volatile boolean mTopScoresLoaded;
+    private final Runnable mLoadTopScores = new Runnable() {
+        @Override
+        public void run() {
+            queryTopScores();
+        }
+    };
 
-    public ScoresDatabase(Context context) {
+    public static synchronized ScoresDatabase getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new ScoresDatabase(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private ScoresDatabase(Context context) {
         super(context, NAME, null, VERSION);
+        mWriter = newBackgroundExecutor("ScoresWriter");
+        mReader = newBackgroundExecutor("ScoresReader");
+    }
+
+    private static ExecutorService newBackgroundExecutor(final String name) {
+        return Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable r) {
+                return new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                        r.run();
+                    }
+                }, name);
+            }
+        });
+    }
+
+    @Override
+    public void onConfigure(SQLiteDatabase db) {
+        db.enableWriteAheadLogging();
     }
 
     @Override
     public void onCreate(SQLiteDatabase db) {
+        createScoresTable(db);
+        createStatisticsTables(db);
+        createIndices(db);
+    }
+
+    private void createScoresTable(SQLiteDatabase db) {
+        // The mode and moves of scores saved before version 2 are unknown and left null
         db.execSQL("CREATE TABLE " + TABLE_NAME + " ("
-                + KEY_SCORE + " INTEGER, "
-                + KEY_TIMESTAMP + " TIMESTAMP DEFAULT CURRENT_TIMESTAMP)");
+                + KEY_SCORE + " INTEGER NOT NULL, "
+                + KEY_TIMESTAMP + " INTEGER NOT NULL, "
+                + KEY_MODE + " TEXT, "
+                + KEY_MOVES + " INTEGER)");
+    }
+
+    private void createStatisticsTables(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + STATS_TABLE_NAME + " ("
+                + KEY_MODE + " TEXT PRIMARY KEY, "
+                + KEY_COUNT + " INTEGER NOT NULL, "
+                + KEY_SUM + " INTEGER NOT NULL, "
+                + KEY_MIN + " INTEGER NOT NULL, "
+                + KEY_MAX + " INTEGER NOT NULL, "
+                + KEY_LAST_DAY + " INTEGER NOT NULL, "
+                + KEY_STREAK + " INTEGER NOT NULL, "
+                + KEY_BEST_STREAK + " INTEGER NOT NULL)");
+        db.execSQL("CREATE TABLE " + BUCKETS_TABLE_NAME + " ("
+                + KEY_MODE + " TEXT NOT NULL, "
+                + KEY_BUCKET + " INTEGER NOT NULL, "
+                + KEY_COUNT + " INTEGER NOT NULL, "
+                + "PRIMARY KEY (" + KEY_MODE + ", " + KEY_BUCKET + "))");
+    }
+
+    @Override
+    public void onOpen(SQLiteDatabase db) {
+        // Databases created before the index was added don't have it yet
+        if (!db.isReadOnly()) {
+            createIndices(db);
+        }
+    }
+
+    private void createIndices(SQLiteDatabase db) {
+        // The row id is implicitly part of every index so this orders the history completely
+        db.execSQL("CREATE INDEX IF NOT EXISTS " + INDEX_TIMESTAMP + " ON " + TABLE_NAME
+                + " (" + KEY_TIMESTAMP + ")");
+        db.execSQL("CREATE INDEX IF NOT EXISTS " + INDEX_SCORE + " ON " + TABLE_NAME
+                + " (" + KEY_SCORE + ")");
     }
 
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
         Log.w(TAG, "Upgrading database from version " + oldVersion + " to " + newVersion);
 
-        db.execSQL("DROP TABLE IF EXISTS " + TABLE_NAME);
-        onCreate(db);
+        // Each step upgrades from the version before it, falling through to the next
+        switch (oldVersion) {
+            case 1:
+                upgradeToVersion2(db);
+            case 2:
+                upgradeToVersion3(db);
+        }
+    }
+
+    /**
+     * Convert the text timestamps of version 1, stored by CURRENT_TIMESTAMP in UTC, to epoch
+     * milliseconds. SQLite can't change the type of a column so the table is copied, keeping
+     * the row ids.
+     */
+    private void upgradeToVersion2(SQLiteDatabase db) {
+        db.execSQL("ALTER TABLE " + TABLE_NAME + " RENAME TO " + TABLE_NAME + "_v1");
+        createScoresTable(db);
+        db.execSQL("INSERT INTO " + TABLE_NAME + " (rowid, " + KEY_SCORE + ", " + KEY_TIMESTAMP
+                + ") SELECT rowid, " + KEY_SCORE + ", "
+                + "CAST(strftime('%s', " + KEY_TIMESTAMP + ") AS INTEGER) * 1000 FROM "
+                + TABLE_NAME + "_v1 WHERE " + KEY_SCORE + " IS NOT NULL");
+        db.execSQL("DROP TABLE " + TABLE_NAME + "_v1");
+        createIndices(db);
     }
 
-    public void saveScoreAsync(int score) {
-        new AsyncTask<Integer, Void, Void>() {
-            @Override
-            protected Void doInBackground(Integer... params) {
-                saveScore(params[0]);
-                return null;
+    /** Build the statistics from the existing scores, oldest first so streaks are counted */
+    private void upgradeToVersion3(SQLiteDatabase db) {
+        createStatisticsTables(db);
+
+        StatisticsWriter writer = new StatisticsWriter(db);
+        Cursor cursor = db.query(TABLE_NAME, new String[] { KEY_SCORE, KEY_TIMESTAMP, KEY_MODE },
+                null, null, null, null, KEY_TIMESTAMP + ", rowid");
+        try {
+            while (cursor.moveToNext()) {
+                writer.add(cursor.getInt(0), cursor.getLong(1),
+                        cursor.isNull(2) ? null : cursor.getString(2));
             }
-        }.execute(score);
+        } finally {
+            cursor.close();
+            writer.close();
+        }
     }
 
-    public void saveScore(int score) {
-        ContentValues values = new ContentValues();
-        values.put(KEY_SCORE, score);
-        getWritableDatabase().insert(TABLE_NAME, null, values);
+    /** Callback for when a score has been written to the database */
+    public interface SaveCallback {
+        /**
+         * Called on the main thread with the row id of the saved score, or -1 if it failed or
+         * its recording didn't reproduce it
+         */
+        void onScoreSaved(long id);
+    }
+
+    /**
+     * Queue a score to be saved on the writer thread.
+     * @param recording the recording of the game that scored it, replayed before the score is
+     *                  written, or null to write it without checking
+     * @param callback called on the main thread once the score is durable (may be null)
+     * @return a future for the row id of the saved score
+     */
+    public Future<Long> saveScoreAsync(int score, GameMode mode, int moves, byte[] recording,
+            SaveCallback callback) {
+        PendingScore pending = new PendingScore(score, mode, moves, System.currentTimeMillis(),
+                recording, callback);
+        mPendingScores.add(pending);
+        if (mFlushScheduled.compareAndSet(false, true)) {
+            mWriter.execute(mFlush);
+        }
+        return pending.mFuture;
+    }
+
+    /** Write every queued score in a single transaction */
+    private void flush() {
+        // Scores queued after this point schedule another flush
+        mFlushScheduled.set(false);
+
+        List<PendingScore> batch = new ArrayList<PendingScore>();
+        PendingScore pending;
+        while ((pending = mPendingScores.poll()) != null) {
+            batch.add(pending);
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        // Replaying is the slow part, so it's done before the transaction is started
+        for (PendingScore score : batch) {
+            score.validate();
+        }
+
+        try {
+            SQLiteDatabase db = getWritableDatabase();
+            if (mInsertStatement == null) {
+                mInsertStatement = db.compileStatement("INSERT INTO " + TABLE_NAME + " ("
+                        + KEY_SCORE + ", " + KEY_TIMESTAMP + ", " + KEY_MODE + ", " + KEY_MOVES
+                        + ") VALUES (?, ?, ?, ?)");
+                mStatisticsWriter = new StatisticsWriter(db);
+            }
+
+            db.beginTransaction();
+            try {
+                for (PendingScore score : batch) {
+                    if (score.mError != null) {
+                        continue;
+                    }
+                    mInsertStatement.bindLong(1, score.mScore);
+                    mInsertStatement.bindLong(2, score.mTimestamp);
+                    mInsertStatement.bindString(3, score.mMode.name());
+                    mInsertStatement.bindLong(4, score.mMoves);
+                    score.mId = mInsertStatement.executeInsert();
+                    mStatisticsWriter.add(score.mScore, score.mTimestamp, score.mMode.name());
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Failed to save " + batch.size() + " scores", e);
+            for (PendingScore score : batch) {
+                if (score.mError == null) {
+                    score.mError = e;
+                }
+            }
+        }
+
+        if (mTopScoresLoaded) {
+            for (PendingScore score : batch) {
+                if (score.mError == null) {
+                    addTopScore(score.mScore);
+                }
+            }
+        }
+
+        for (PendingScore score : batch) {
+            score.complete();
+        }
 
         if (DEBUG) {
             Log.d(TAG, dump());
@@ -74,74 +352,477 @@ public class ScoresDatabase extends SQLiteOpenHelper {
     }
 
     /**
-     * Get all the scores ever recorded.
-     * @return a map of the scores indexed by date scored.
+     * Adds scores to the statistics tables with compiled statements. Each score updates the
+     * statistics of its mode and of all scores, inserting the rows the first time.
      */
-    public Map<Date, Integer> getScores() {
-        Cursor cursor = getReadableDatabase().query(TABLE_NAME,
-                new String[] { KEY_SCORE, KEY_TIMESTAMP }, null, null, null, null, null);
-
-        Map<Date, Integer> map = null;
-        if (cursor != null) {
-            map = new HashMap<Date, Integer>(cursor.getCount());
-            if (cursor.moveToFirst()) {
-                do {
-                    int score = cursor.getInt(0);
-                    String dateString = cursor.getString(1);
-                    Date date = null;
-                    try {
-                        date = SQL_DATE_FORMAT.parse(dateString);
-                    } catch (ParseException e) {
-                        Log.e(TAG, "Failed to parse date!", e);
+    private static class StatisticsWriter {
+
+        /** The streak after a game on day ?2 */
+        private static final String NEXT_STREAK = "CASE WHEN ?2 <= " + KEY_LAST_DAY + " THEN "
+                + KEY_STREAK + " WHEN ?2 = " + KEY_LAST_DAY + " + 1 THEN " + KEY_STREAK
+                + " + 1 ELSE 1 END";
+
+        private final SQLiteStatement mUpdateStats;
+        private final SQLiteStatement mInsertStats;
+        private final SQLiteStatement mUpdateBucket;
+        private final SQLiteStatement mInsertBucket;
+
+        StatisticsWriter(SQLiteDatabase db) {
+            // Every expression is evaluated against the old row, so the best streak repeats the
+            // streak calculation
+            mUpdateStats = db.compileStatement("UPDATE " + STATS_TABLE_NAME + " SET "
+                    + KEY_COUNT + " = " + KEY_COUNT + " + 1, "
+                    + KEY_SUM + " = " + KEY_SUM + " + ?1, "
+                    + KEY_MIN + " = MIN(" + KEY_MIN + ", ?1), "
+                    + KEY_MAX + " = MAX(" + KEY_MAX + ", ?1), "
+                    + KEY_STREAK + " = " + NEXT_STREAK + ", "
+                    + KEY_BEST_STREAK + " = MAX(" + KEY_BEST_STREAK + ", " + NEXT_STREAK + "), "
+                    + KEY_LAST_DAY + " = MAX(" + KEY_LAST_DAY + ", ?2) "
+                    + "WHERE " + KEY_MODE + " = ?3");
+            mInsertStats = db.compileStatement("INSERT INTO " + STATS_TABLE_NAME + " ("
+                    + KEY_MODE + ", " + KEY_COUNT + ", " + KEY_SUM + ", " + KEY_MIN + ", "
+                    + KEY_MAX + ", " + KEY_LAST_DAY + ", " + KEY_STREAK + ", "
+                    + KEY_BEST_STREAK + ") VALUES (?3, 1, ?1, ?1, ?1, ?2, 1, 1)");
+            mUpdateBucket = db.compileStatement("UPDATE " + BUCKETS_TABLE_NAME + " SET "
+                    + KEY_COUNT + " = " + KEY_COUNT + " + 1 "
+                    + "WHERE " + KEY_MODE + " = ?1 AND " + KEY_BUCKET + " = ?2");
+            mInsertBucket = db.compileStatement("INSERT INTO " + BUCKETS_TABLE_NAME + " ("
+                    + KEY_MODE + ", " + KEY_BUCKET + ", " + KEY_COUNT + ") VALUES (?1, ?2, 1)");
+        }
+
+        /** @param mode the name of the mode of the score, or null if it isn't known */
+        void add(int score, long timestamp, String mode) {
+            long day = ScoreStatistics.dayOf(timestamp);
+            int bucket = Histogram.getBucket(score);
+            add(STATS_ALL, score, day, bucket);
+            if (mode != null) {
+                add(mode, score, day, bucket);
+            }
+        }
+
+        private void add(String key, int score, long day, int bucket) {
+            mUpdateStats.bindLong(1, score);
+            mUpdateStats.bindLong(2, day);
+            mUpdateStats.bindString(3, key);
+            if (mUpdateStats.executeUpdateDelete() == 0) {
+                mInsertStats.bindLong(1, score);
+                mInsertStats.bindLong(2, day);
+                mInsertStats.bindString(3, key);
+                mInsertStats.executeInsert();
+            }
+
+            mUpdateBucket.bindString(1, key);
+            mUpdateBucket.bindLong(2, bucket);
+            if (mUpdateBucket.executeUpdateDelete() == 0) {
+                mInsertBucket.bindString(1, key);
+                mInsertBucket.bindLong(2, bucket);
+                mInsertBucket.executeInsert();
+            }
+        }
+
+        void close() {
+            mUpdateStats.close();
+            mInsertStats.close();
+            mUpdateBucket.close();
+            mInsertBucket.close();
+        }
+    }
+
+    /** A score waiting to be written */
+    private class PendingScore implements Callable<Long> {
+        final int mScore;
+        final GameMode mMode;
+        final int mMoves;
+        final long mTimestamp;
+        final SaveCallback mCallback;
+        final FutureTask<Long> mFuture;
+        /** Only used on the writer thread, and dropped once replayed */
+        byte[] mRecording;
+        long mId = -1;
+        Exception mError;
+
+        PendingScore(int score, GameMode mode, int moves, long timestamp, byte[] recording,
+                SaveCallback callback) {
+            mScore = score;
+            mMode = mode;
+            mMoves = moves;
+            mTimestamp = timestamp;
+            mRecording = recording;
+            mCallback = callback;
+            mFuture = new FutureTask<Long>(this);
+        }
+
+        /** Replay the recording, if any, failing the score unless it is reproduced */
+        void validate() {
+            if (mRecording == null) {
+                return;
+            }
+            try {
+                int replayedScore = GameReplayer.replay(mRecording).getScore();
+                if (replayedScore != mScore) {
+                    mError = new IllegalStateException(
+                            "Replayed score " + replayedScore + " doesn't match " + mScore);
+                }
+            } catch (IllegalArgumentException e) {
+                mError = e;
+            }
+            mRecording = null;
+            if (mError != null) {
+                Log.w(TAG, "Not saving score " + mScore, mError);
+            }
+        }
+
+        @Override
+        public Long call() throws Exception {
+            if (mError != null) {
+                throw mError;
+            }
+            return mId;
+        }
+
+        void complete() {
+            mFuture.run();
+            if (mCallback != null) {
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        mCallback.onScoreSaved(mError == null ? mId : -1);
+                    }
+                });
+            }
+        }
+    }
+
+    /** Callback for a page of the score history */
+    public interface PageCallback {
+        /**
+         * Called on the main thread with the page of scores, newest first, or null if reading
+         * failed. The page is shorter than requested once the oldest score is reached.
+         */
+        void onPageLoaded(List<ScoreRecord> scores);
+    }
+
+    /** Visits every score in the history, for exports and the like */
+    public interface ScoreVisitor {
+        /**
+         * Called on the reader thread with each score, newest first.
+         * @return false to stop visiting
+         */
+        boolean visit(ScoreRecord score);
+
+        /**
+         * Called on the main thread once visiting stops.
+         * @param count the number of scores visited
+         * @param success false if reading failed part way
+         */
+        void onFinished(int count, boolean success);
+    }
+
+    /**
+     * Read a page of the score history on the reader thread.
+     * @param after the last score of the previous page, or null for the newest scores
+     * @param pageSize the maximum number of scores to read
+     * @return a future that can be used to cancel the read
+     */
+    public Future<?> loadScoresPage(final ScoreRecord after, final int pageSize,
+            final PageCallback callback) {
+        return mReader.submit(new Runnable() {
+            @Override
+            public void run() {
+                List<ScoreRecord> page;
+                try {
+                    page = queryPage(after, pageSize);
+                } catch (RuntimeException e) {
+                    Log.e(TAG, "Failed to read scores", e);
+                    page = null;
+                }
+
+                final List<ScoreRecord> result = page;
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onPageLoaded(result);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Visit the whole score history on the reader thread. Scores are read a page at a time and
+     * only one page is held at once.
+     * @return a future that can be used to stop visiting
+     */
+    public Future<?> visitScores(final ScoreVisitor visitor) {
+        return mReader.submit(new Runnable() {
+            @Override
+            public void run() {
+                int count = 0;
+                boolean success = true;
+                try {
+                    ScoreRecord last = null;
+                    List<ScoreRecord> page;
+                    visiting:
+                    do {
+                        page = queryPage(last, VISIT_PAGE_SIZE);
+                        for (ScoreRecord score : page) {
+                            if (Thread.currentThread().isInterrupted() || !visitor.visit(score)) {
+                                break visiting;
+                            }
+                            count++;
+                            last = score;
+                        }
+                    } while (page.size() == VISIT_PAGE_SIZE);
+                } catch (RuntimeException e) {
+                    Log.e(TAG, "Failed to read scores", e);
+                    success = false;
+                }
+
+                final int visited = count;
+                final boolean succeeded = success;
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        visitor.onFinished(visited, succeeded);
                     }
-                    if (date != null) {
-                        map.put(date, score);
+                });
+            }
+        });
+    }
+
+    /** Query the page of scores following {@code after} in history order */
+    private List<ScoreRecord> queryPage(ScoreRecord after, int pageSize) {
+        String selection = null;
+        String[] selectionArgs = null;
+        if (after != null) {
+            String timestamp = String.valueOf(after.getTimestamp());
+            selection = HISTORY_AFTER;
+            selectionArgs = new String[] { timestamp, timestamp, String.valueOf(after.getId()) };
+        }
+
+        Cursor cursor = getReadableDatabase().query(TABLE_NAME, RECORD_COLUMNS, selection,
+                selectionArgs, null, null, HISTORY_ORDER, String.valueOf(pageSize));
+        if (cursor == null) {
+            return Collections.emptyList();
+        }
+
+        List<ScoreRecord> page = new ArrayList<ScoreRecord>(cursor.getCount());
+        try {
+            while (cursor.moveToNext()) {
+                page.add(readRecord(cursor));
+            }
+        } finally {
+            cursor.close();
+        }
+        return page;
+    }
+
+    private static ScoreRecord readRecord(Cursor cursor) {
+        GameMode mode = null;
+        if (!cursor.isNull(3)) {
+            try {
+                mode = GameMode.valueOf(cursor.getString(3));
+            } catch (IllegalArgumentException e) {
+                Log.w(TAG, "Unknown game mode " + cursor.getString(3));
+            }
+        }
+        int moves = cursor.isNull(4) ? ScoreRecord.UNKNOWN_MOVES : cursor.getInt(4);
+        return new ScoreRecord(cursor.getLong(0), cursor.getInt(1), cursor.getLong(2), mode,
+                moves);
+    }
+
+    /** Callback for loaded statistics */
+    public interface StatisticsCallback {
+        /** Called on the main thread with the statistics, or null if reading failed */
+        void onStatisticsLoaded(ScoreStatistics statistics);
+    }
+
+    /**
+     * Read the statistics of a mode on the reader thread.
+     * @param mode the mode, or null for the statistics of every score
+     * @return a future that can be used to cancel the read
+     */
+    public Future<?> loadStatistics(final GameMode mode, final StatisticsCallback callback) {
+        return mReader.submit(new Runnable() {
+            @Override
+            public void run() {
+                ScoreStatistics statistics;
+                try {
+                    statistics = queryStatistics(mode != null ? mode.name() : STATS_ALL);
+                } catch (RuntimeException e) {
+                    Log.e(TAG, "Failed to read statistics", e);
+                    statistics = null;
+                }
+
+                final ScoreStatistics result = statistics;
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onStatisticsLoaded(result);
                     }
-                } while (cursor.moveToNext());
+                });
+            }
+        });
+    }
+
+    private ScoreStatistics queryStatistics(String key) {
+        SQLiteDatabase db = getReadableDatabase();
+        String[] selectionArgs = new String[] { key };
+
+        Cursor cursor = db.query(STATS_TABLE_NAME, new String[] { KEY_COUNT, KEY_SUM, KEY_MIN,
+                KEY_MAX, KEY_LAST_DAY, KEY_STREAK, KEY_BEST_STREAK }, KEY_MODE + " = ?",
+                selectionArgs, null, null, null);
+        long count;
+        long sum;
+        int min;
+        int max;
+        long lastDay;
+        int streak;
+        int bestStreak;
+        try {
+            if (!cursor.moveToFirst()) {
+                return ScoreStatistics.empty();
+            }
+            count = cursor.getLong(0);
+            sum = cursor.getLong(1);
+            min = cursor.getInt(2);
+            max = cursor.getInt(3);
+            lastDay = cursor.getLong(4);
+            streak = cursor.getInt(5);
+            bestStreak = cursor.getInt(6);
+        } finally {
+            cursor.close();
+        }
+
+        // Each bucket is recorded at its highest value, as if the scores in it were recorded
+        Histogram histogram = new Histogram(ScoreStatistics.MAX_SCORE);
+        cursor = db.query(BUCKETS_TABLE_NAME, new String[] { KEY_BUCKET, KEY_COUNT },
+                KEY_MODE + " = ?", selectionArgs, null, null, null);
+        try {
+            while (cursor.moveToNext()) {
+                histogram.record(Histogram.getBucketHighestValue(cursor.getInt(0)),
+                        cursor.getLong(1));
             }
+        } finally {
             cursor.close();
         }
-        return map;
+
+        return new ScoreStatistics(count, sum, min, max, lastDay, streak, bestStreak, histogram);
+    }
+
+    /** Start loading the top scores in the background so they are ready when needed */
+    public void warmTopScores() {
+        if (!mTopScoresLoaded) {
+            mWriter.execute(mLoadTopScores);
+        }
+    }
+
+    /** Callback for loaded top scores */
+    public interface TopScoresCallback {
+        /** Called on the main thread with the top ten scores in descending order */
+        void onTopScoresLoaded(List<Integer> scores);
     }
 
     /**
-     * Get the top ten scores.
-     * @return a list of the top ten scores in descending order
+     * Get the top ten scores as cached, without touching the database. If they haven't been
+     * loaded yet the list is empty and loading is started, so an empty list doesn't mean there
+     * are no scores; use {@link #loadTopScores(TopScoresCallback)} to wait for them instead.
+     * @return a list of the top ten scores in descending order, empty until they are loaded
      */
     public List<Integer> getTopTenScores() {
+        if (!mTopScoresLoaded) {
+            warmTopScores();
+            return new ArrayList<Integer>(0);
+        }
+        return copyTopScores();
+    }
+
+    /**
+     * Get the top ten scores, loading them first if needed. They are loaded on the writer thread
+     * so that no write can slip in between the load and the cache.
+     * @return a future that can be used to cancel the load
+     */
+    public Future<?> loadTopScores(final TopScoresCallback callback) {
+        return mWriter.submit(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    queryTopScores();
+                } catch (RuntimeException e) {
+                    Log.e(TAG, "Failed to load top scores", e);
+                }
+
+                final List<Integer> scores = copyTopScores();
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onTopScoresLoaded(scores);
+                    }
+                });
+            }
+        });
+    }
+
+    private List<Integer> copyTopScores() {
+        synchronized (mTopScores) {
+            List<Integer> list = new ArrayList<Integer>(mTopScoreCount);
+            for (int i = 0; i < mTopScoreCount; i++) {
+                list.add(mTopScores[i]);
+            }
+            return list;
+        }
+    }
+
+    /** Query the top scores into the cache. Only called on the writer thread. */
+    private void queryTopScores() {
+        if (mTopScoresLoaded) {
+            return;
+        }
+
         Cursor cursor = getReadableDatabase().query(TABLE_NAME, new String[] { KEY_SCORE }, null,
-                null, null, null, KEY_SCORE + " DESC", "10");
+                null, null, null, KEY_SCORE + " DESC", String.valueOf(TOP_SCORES));
+        synchronized (mTopScores) {
+            mTopScoreCount = 0;
+            if (cursor != null) {
+                if (cursor.moveToFirst()) {
+                    do {
+                        mTopScores[mTopScoreCount++] = cursor.getInt(0);
+                    } while (cursor.moveToNext() && mTopScoreCount < TOP_SCORES);
+                }
+                cursor.close();
+            }
+        }
+        mTopScoresLoaded = true;
+    }
 
-        List<Integer> list = null;
-        if (cursor != null) {
-            list = new ArrayList<Integer>(cursor.getCount());
-            if (cursor.moveToFirst()) {
-                do {
-                    list.add(cursor.getInt(0));
-                } while (cursor.moveToNext());
+    /** Insert a newly saved score into the cache if it is high enough */
+    private void addTopScore(int score) {
+        synchronized (mTopScores) {
+            int i = mTopScoreCount;
+            if (i == TOP_SCORES) {
+                if (score <= mTopScores[TOP_SCORES - 1]) {
+                    return;
+                }
+                i--;
+            } else {
+                mTopScoreCount++;
             }
-            cursor.close();
+
+            // Shift the lower scores down to make room
+            while (i > 0 && mTopScores[i - 1] < score) {
+                mTopScores[i] = mTopScores[i - 1];
+                i--;
+            }
+            mTopScores[i] = score;
         }
-        return list;
     }
 
     /** For DEBUG */
     private String dump() {
-        Map<Date, Integer> scores = getScores();
         StringBuilder sb = new StringBuilder();
-        final int limit = 20;
-        int pos = 0;
-        for (Map.Entry<Date, Integer> score : scores.entrySet()) {
-            sb.append(score.getKey().toString())
-                    .append(" - ")
-                    .append(score.getValue())
-                    .append('\n');
-
-            if (++pos == limit) {
-                break;
-            }
+        for (ScoreRecord score : queryPage(null, 20)) {
+            sb.append(score).append('\n');
         }
-
         return sb.toString();
     }
 }
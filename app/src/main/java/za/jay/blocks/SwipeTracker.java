@@ -0,0 +1,122 @@
+package za.jay.blocks;
+
+import android.view.MotionEvent;
+
+/**
+ * Turns the touch samples of a drag across a {@link BoardView} into the sequence of cells the
+ * finger passed over. Every sample batched into a move event is used and the line between each
+ * pair of samples is walked cell by cell, so no cell is skipped however fast the finger moves.
+ * Cells are only ever entered from a horizontal or vertical neighbour. Hit testing is done with
+ * arithmetic on the cell size and nothing is allocated per event.
+ */
+public class SwipeTracker {
+
+    /** Receives the cells entered by the drag */
+    public interface Callback {
+        void onCellEntered(int index);
+    }
+
+    private final BoardView mBoard;
+    private final Callback mCallback;
+
+    private float mLastX;
+    private float mLastY;
+    private int mLastIndex = -1;
+    private boolean mTracking;
+
+    public SwipeTracker(BoardView board, Callback callback) {
+        mBoard = board;
+        mCallback = callback;
+    }
+
+    /** Start tracking a drag from a point */
+    public void down(float x, float y) {
+        mLastX = x;
+        mLastY = y;
+        mLastIndex = mBoard.getBlockIndex(x, y);
+        mTracking = true;
+    }
+
+    /** Follow the drag through every sample of a move event, oldest first */
+    public void move(MotionEvent event) {
+        if (!mTracking) {
+            return;
+        }
+
+        int history = event.getHistorySize();
+        for (int i = 0; i < history; i++) {
+            lineTo(event.getHistoricalX(i), event.getHistoricalY(i));
+        }
+        lineTo(event.getX(), event.getY());
+    }
+
+    /** Stop tracking the drag */
+    public void up() {
+        mTracking = false;
+        mLastIndex = -1;
+    }
+
+    /**
+     * Walk the cells crossed by the line from the last point to (x, y). At each step the walk
+     * moves into the neighbouring column or row, whichever grid line the line crosses first.
+     */
+    private void lineTo(float x, float y) {
+        int cellSize = mBoard.getCellSize();
+        if (cellSize == 0) {
+            return;
+        }
+
+        int col = (int) Math.floor(mLastX / cellSize);
+        int row = (int) Math.floor(mLastY / cellSize);
+        int endCol = (int) Math.floor(x / cellSize);
+        int endRow = (int) Math.floor(y / cellSize);
+
+        float dx = x - mLastX;
+        float dy = y - mLastY;
+        int stepCol = dx > 0 ? 1 : -1;
+        int stepRow = dy > 0 ? 1 : -1;
+
+        // Fractions of the line at which the next column and row boundaries are crossed, and
+        // the fraction taken to cross a whole cell
+        float nextColT = Float.MAX_VALUE;
+        float colDeltaT = Float.MAX_VALUE;
+        if (dx != 0) {
+            float boundary = (dx > 0 ? col + 1 : col) * cellSize;
+            nextColT = (boundary - mLastX) / dx;
+            colDeltaT = cellSize / Math.abs(dx);
+        }
+        float nextRowT = Float.MAX_VALUE;
+        float rowDeltaT = Float.MAX_VALUE;
+        if (dy != 0) {
+            float boundary = (dy > 0 ? row + 1 : row) * cellSize;
+            nextRowT = (boundary - mLastY) / dy;
+            rowDeltaT = cellSize / Math.abs(dy);
+        }
+
+        int steps = Math.abs(endCol - col) + Math.abs(endRow - row);
+        for (int i = 0; i < steps; i++) {
+            if (col != endCol && (nextColT < nextRowT || row == endRow)) {
+                col += stepCol;
+                nextColT += colDeltaT;
+            } else {
+                row += stepRow;
+                nextRowT += rowDeltaT;
+            }
+            enterCell(col, row);
+        }
+
+        mLastX = x;
+        mLastY = y;
+    }
+
+    private void enterCell(int col, int row) {
+        int index = col >= 0 && row >= 0 && col < mBoard.getColumns() && row < mBoard.getRows()
+                ? col + row * mBoard.getColumns() : -1;
+        if (index != mLastIndex) {
+            mLastIndex = index;
+            if (index >= 0) {
+                mCallback.onCellEntered(index);
+            }
+        }
+    }
+}
@@ -3,16 +3,56 @@ package za.jay.blocks;
 import android.app.Fragment;
 import android.content.Intent;
 import android.os.Bundle;
+import android.text.TextUtils;
+import android.util.Log;
 import android.view.LayoutInflater;
+import android.view.MenuItem;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.TextView;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Future;
+
+import za.jay.blocks.engine.GameMode;
 
 public class TitleScreenFragment extends Fragment {
 
+    private static final String TAG = "TitleScreenFragment";
+
+    /** Board dimensions for the marathon variant of endless mode */
+    private static final int MARATHON_SIZE = 16;
+
+    /** Number of the most recent games listed */
+    private static final int RECENT_GAMES = 5;
+
+    private ScoresDatabase mScoresDatabase;
+    private TextView mStatsView;
+    private TextView mTopScoresView;
+    private TextView mRecentGamesView;
+    private Future<?> mStatsLoad;
+    private Future<?> mTopScoresLoad;
+    private Future<?> mRecentGamesLoad;
+
     @Override
     public void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
 
+        // Load the leaderboard while the player is choosing a game
+        mScoresDatabase = ScoresDatabase.getInstance(getActivity());
+        mScoresDatabase.warmTopScores();
+        // Parse the fonts and load the colours the game needs before it's started
+        ResourceCache.getInstance(getActivity()).preload();
+        BoardViewPool.warm(getActivity(), GameFragment.DEFAULT_WIDTH, GameFragment.DEFAULT_HEIGHT);
+
+        setHasOptionsMenu(true);
     }
 
     @Override
@@ -23,13 +63,159 @@ public class TitleScreenFragment extends Fragment {
         root.findViewById(R.id.title_screen_btn_timed).setOnClickListener(mButtonListener);
         root.findViewById(R.id.title_screen_btn_moves).setOnClickListener(mButtonListener);
         root.findViewById(R.id.title_screen_btn_endless).setOnClickListener(mButtonListener);
+        root.findViewById(R.id.title_screen_btn_marathon).setOnClickListener(mButtonListener);
+        mStatsView = (TextView) root.findViewById(R.id.title_screen_stats);
+        mTopScoresView = (TextView) root.findViewById(R.id.title_screen_top_scores);
+        mRecentGamesView = (TextView) root.findViewById(R.id.title_screen_recent_games);
 
         return root;
     }
 
+    @Override
+    public void onResume() {
+        super.onResume();
+
+        // Reload each time in case a game was just finished
+        mStatsLoad = mScoresDatabase.loadStatistics(null,
+                new ScoresDatabase.StatisticsCallback() {
+            @Override
+            public void onStatisticsLoaded(ScoreStatistics statistics) {
+                if (isAdded() && statistics != null && statistics.getCount() > 0) {
+                    mStatsView.setText(getString(R.string.title_screen_stats,
+                            statistics.getCount(), statistics.getBest(), statistics.getMean(),
+                            statistics.getMedian(), statistics.getCurrentStreak(),
+                            statistics.getBestStreak()));
+                }
+            }
+        });
+
+        // The cached top scores are usually warm by now; an empty list means they may not be
+        List<Integer> topScores = mScoresDatabase.getTopTenScores();
+        if (!topScores.isEmpty()) {
+            showTopScores(topScores);
+        } else {
+            mTopScoresLoad = mScoresDatabase.loadTopScores(
+                    new ScoresDatabase.TopScoresCallback() {
+                @Override
+                public void onTopScoresLoaded(List<Integer> scores) {
+                    if (isAdded()) {
+                        showTopScores(scores);
+                    }
+                }
+            });
+        }
+
+        mRecentGamesLoad = mScoresDatabase.loadScoresPage(null, RECENT_GAMES,
+                new ScoresDatabase.PageCallback() {
+            @Override
+            public void onPageLoaded(List<ScoreRecord> scores) {
+                if (isAdded() && scores != null) {
+                    showRecentGames(scores);
+                }
+            }
+        });
+    }
+
+    @Override
+    public void onPause() {
+        super.onPause();
+        mStatsLoad.cancel(false);
+        mRecentGamesLoad.cancel(false);
+        if (mTopScoresLoad != null) {
+            mTopScoresLoad.cancel(false);
+            mTopScoresLoad = null;
+        }
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        if (item.getItemId() == R.id.action_export_scores) {
+            exportScores();
+            return true;
+        }
+        return super.onOptionsItemSelected(item);
+    }
+
+    private void showTopScores(List<Integer> scores) {
+        if (scores.isEmpty()) {
+            mTopScoresView.setText(null);
+            return;
+        }
+        mTopScoresView.setText(getString(R.string.title_screen_top_scores,
+                TextUtils.join("\n", scores)));
+    }
+
+    private void showRecentGames(List<ScoreRecord> scores) {
+        if (scores.isEmpty()) {
+            mRecentGamesView.setText(null);
+            return;
+        }
+        List<String> lines = new ArrayList<String>(scores.size());
+        for (ScoreRecord score : scores) {
+            lines.add(score.getMode() != null
+                    ? score.getMode().name().toLowerCase(Locale.US) + " " + score.getScore()
+                    : String.valueOf(score.getScore()));
+        }
+        mRecentGamesView.setText(getString(R.string.title_screen_recent_games,
+                TextUtils.join("\n", lines)));
+    }
+
+    /** Write the whole score history to a CSV file in the app's external files directory */
+    private void exportScores() {
+        final File file = new File(getActivity().getExternalFilesDir(null),
+                "scores-" + System.currentTimeMillis() + ".csv");
+        mScoresDatabase.visitScores(new ScoresDatabase.ScoreVisitor() {
+            /** Only used on the reader thread until visiting finishes */
+            private Writer mWriter;
+            private IOException mError;
+
+            @Override
+            public boolean visit(ScoreRecord score) {
+                try {
+                    if (mWriter == null) {
+                        mWriter = new BufferedWriter(new FileWriter(file));
+                        mWriter.write("timestamp,score,mode,moves\n");
+                    }
+                    mWriter.write(score.getTimestamp() + "," + score.getScore() + ","
+                            + (score.getMode() != null ? score.getMode().name() : "") + ","
+                            + (score.getMoves() != ScoreRecord.UNKNOWN_MOVES
+                                    ? String.valueOf(score.getMoves()) : "") + "\n");
+                    return true;
+                } catch (IOException e) {
+                    mError = e;
+                    return false;
+                }
+            }
+
+            @Override
+            public void onFinished(int count, boolean success) {
+                if (mWriter != null) {
+                    try {
+                        mWriter.close();
+                    } catch (IOException e) {
+                        if (mError == null) {
+                            mError = e;
+                        }
+                    }
+                }
+                if (mError != null || !success) {
+                    Log.e(TAG, "Couldn't export scores", mError);
+                } else {
+                    Log.i(TAG, count + " scores exported to " + file);
+                }
+            }
+        });
+    }
+
     private void launchGame(GameMode mode) {
+        launchGame(mode, GameFragment.DEFAULT_WIDTH, GameFragment.DEFAULT_HEIGHT);
+    }
+
+    private void launchGame(GameMode mode, int width, int height) {
         Intent intent = new Intent(getActivity(), GameActivity.class);
         intent.putExtra(GameActivity.EXTRA_GAME_MODE, mode);
+        intent.putExtra(GameActivity.EXTRA_WIDTH, width);
+        intent.putExtra(GameActivity.EXTRA_HEIGHT, height);
         getActivity().startActivity(intent);
     }
 
@@ -46,6 +232,9 @@ public class TitleScreenFragment extends Fragment {
                 case R.id.title_screen_btn_endless:
                     launchGame(GameMode.ENDLESS);
                     break;
+                case R.id.title_screen_btn_marathon:
+                    launchGame(GameMode.ENDLESS, MARATHON_SIZE, MARATHON_SIZE);
+                    break;
             }
         }
     };
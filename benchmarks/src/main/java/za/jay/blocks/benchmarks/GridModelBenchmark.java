@@ -0,0 +1,129 @@
+package za.jay.blocks.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import za.jay.blocks.engine.GridModel;
+import za.jay.blocks.engine.SplitMixRandom;
+
+/**
+ * Throughput of the {@link GridModel} operations across board and palette sizes. Each path
+ * benchmark cycles through a fixed set of paths chosen at random positions on the board.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GridModelBenchmark {
+
+    /** Number of different paths/indices cycled through by each benchmark */
+    private static final int VARIANTS = 64;
+
+    /** Width and height of the board */
+    @Param({"6", "64", "256", "1000"})
+    public int size;
+
+    /** Number of colours in the palette */
+    @Param({"3", "5", "8"})
+    public int colours;
+
+    private GridModel mModel;
+    private int[] mPalette;
+
+    private int[] mIndices;
+    private List<List<Integer>> mShortPaths;
+    private List<List<Integer>> mLongPaths;
+    private List<List<Integer>> mColumnPaths;
+    private int[][] mLongPathArrays;
+    private int mNext;
+
+    @Setup
+    public void setUp() {
+        mPalette = Palettes.create(colours);
+        long seed = size * 31 + colours;
+        mModel = new GridModel(size, size, mPalette, true, new SplitMixRandom(seed));
+
+        Random random = new Random(seed);
+        mIndices = new int[VARIANTS];
+        mShortPaths = new ArrayList<List<Integer>>(VARIANTS);
+        mLongPaths = new ArrayList<List<Integer>>(VARIANTS);
+        mColumnPaths = new ArrayList<List<Integer>>(VARIANTS);
+        mLongPathArrays = new int[VARIANTS][];
+        for (int i = 0; i < VARIANTS; i++) {
+            mIndices[i] = random.nextInt(size * size);
+            mShortPaths.add(Paths.horizontal(size, random.nextInt(size - 1), random.nextInt(size), 2));
+            mLongPaths.add(Paths.rows(size, random.nextInt(size - 3), 4));
+            mColumnPaths.add(Paths.columns(size, random.nextInt(size - 1), 2));
+
+            List<Integer> longPath = mLongPaths.get(i);
+            mLongPathArrays[i] = new int[longPath.size()];
+            for (int j = 0; j < longPath.size(); j++) {
+                mLongPathArrays[i][j] = longPath.get(j);
+            }
+        }
+    }
+
+    private int next() {
+        mNext = (mNext + 1) % VARIANTS;
+        return mNext;
+    }
+
+    @Benchmark
+    public int removeBlock() {
+        int index = mIndices[next()];
+        mModel.removeBlock(index);
+        return mModel.getBlock(index);
+    }
+
+    /** A two block path */
+    @Benchmark
+    public int removePathShort() {
+        return mModel.removePath(mShortPaths.get(next()));
+    }
+
+    /** A path snaking across four full rows */
+    @Benchmark
+    public int removePathLong() {
+        return mModel.removePath(mLongPaths.get(next()));
+    }
+
+    /** The same paths as {@link #removePathLong()} passed as unboxed arrays */
+    @Benchmark
+    public int removePathLongArray() {
+        int[] path = mLongPathArrays[next()];
+        return mModel.removePath(path, path.length);
+    }
+
+    /** A path running the full height of two columns */
+    @Benchmark
+    public int removePathColumns() {
+        return mModel.removePath(mColumnPaths.get(next()));
+    }
+
+    @Benchmark
+    public int removeColor() {
+        return mModel.removeColor(mPalette[next() % colours]);
+    }
+
+    @Benchmark
+    public int fillGrid() {
+        mModel.fillGrid();
+        return mModel.getBlock(0);
+    }
+}
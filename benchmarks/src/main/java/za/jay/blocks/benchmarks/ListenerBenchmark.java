@@ -0,0 +1,80 @@
+package za.jay.blocks.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+import za.jay.blocks.engine.GridModel;
+import za.jay.blocks.engine.SplitMixRandom;
+
+/**
+ * Cost of delivering change notifications for a {@link GridModel#removeColor(int)}, either once per
+ * operation to a batched listener or once per changed block through the adapter.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ListenerBenchmark {
+
+    @Param({"6", "64", "256", "1000"})
+    public int size;
+
+    @Param({"3", "5", "8"})
+    public int colours;
+
+    private int[] mPalette;
+    private GridModel mBatchModel;
+    private GridModel mPerBlockModel;
+    private int mNext;
+    /** Folds in every notification so the listeners' work can't be optimised away */
+    private int mNotified;
+
+    @Setup
+    public void setUp() {
+        mPalette = Palettes.create(colours);
+
+        mBatchModel = new GridModel(size, size, mPalette, true, new SplitMixRandom(size));
+        mBatchModel.setGridBatchChangeListener(new GridModel.GridBatchChangeListener() {
+            @Override
+            public void onBlocksChanged(int[] dirtyDepths) {
+                mNotified += dirtyDepths.length;
+            }
+        });
+
+        mPerBlockModel = new GridModel(size, size, mPalette, true, new SplitMixRandom(size));
+        mPerBlockModel.setGridChangeListener(new GridModel.GridChangeListener() {
+            @Override
+            public void onBlockChange(int index, int newColor) {
+                mNotified += index ^ newColor;
+            }
+        });
+    }
+
+    private int nextColour() {
+        mNext = (mNext + 1) % colours;
+        return mPalette[mNext];
+    }
+
+    @Benchmark
+    public int batchListener() {
+        return mBatchModel.removeColor(nextColour()) + mNotified;
+    }
+
+    @Benchmark
+    public int perBlockListener() {
+        return mPerBlockModel.removeColor(nextColour()) + mNotified;
+    }
+}
@@ -0,0 +1,18 @@
+package za.jay.blocks.benchmarks;
+
+/**
+ * Colour palettes of different sizes for the benchmarks.
+ */
+final class Palettes {
+
+    private Palettes() {}
+
+    /** Create a palette of distinct opaque colours */
+    static int[] create(int count) {
+        int[] palette = new int[count];
+        for (int i = 0; i < count; i++) {
+            palette[i] = 0xff000000 | (i + 1) * 0x1f2f3f;
+        }
+        return palette;
+    }
+}
@@ -0,0 +1,48 @@
+package za.jay.blocks.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Builds connected paths of block indices on a square board. The blocks on the paths don't need
+ * to be the same colour as {@link za.jay.blocks.engine.GridModel} doesn't check.
+ */
+final class Paths {
+
+    private Paths() {}
+
+    /** A straight path of {@code length} blocks going right from (col, row) */
+    static List<Integer> horizontal(int size, int col, int row, int length) {
+        List<Integer> path = new ArrayList<Integer>(length);
+        for (int i = 0; i < length; i++) {
+            path.add(col + i + row * size);
+        }
+        return path;
+    }
+
+    /** A path snaking back and forth across {@code rows} full rows starting at {@code row} */
+    static List<Integer> rows(int size, int row, int rows) {
+        List<Integer> path = new ArrayList<Integer>(size * rows);
+        for (int r = row; r < row + rows; r++) {
+            boolean leftToRight = (r - row) % 2 == 0;
+            for (int i = 0; i < size; i++) {
+                int col = leftToRight ? i : size - 1 - i;
+                path.add(col + r * size);
+            }
+        }
+        return path;
+    }
+
+    /** A path snaking up and down {@code cols} full columns starting at {@code col} */
+    static List<Integer> columns(int size, int col, int cols) {
+        List<Integer> path = new ArrayList<Integer>(size * cols);
+        for (int c = col; c < col + cols; c++) {
+            boolean topToBottom = (c - col) % 2 == 0;
+            for (int i = 0; i < size; i++) {
+                int row = topToBottom ? i : size - 1 - i;
+                path.add(c + row * size);
+            }
+        }
+        return path;
+    }
+}
@@ -0,0 +1,118 @@
+package za.jay.blocks.engine;
+
+import java.util.Arrays;
+
+/**
+ * A set of grid cells stored as one bit per cell in row-major order. A 6x6 grid fits in a single
+ * long, larger grids use one long for every 64 cells. Adjacency between cells in the set is tested
+ * by shifting the whole set by one column or one row and ANDing it with itself.
+ */
+public class Bitboard {
+
+    private final int mWidth;
+    private final int mSize;
+    private final long[] mWords;
+
+    /** Mask of all the cells that have a neighbour to their right */
+    private final long[] mNotLastColumn;
+
+    public Bitboard(int width, int height) {
+        mWidth = width;
+        mSize = width * height;
+        mWords = new long[(mSize + 63) >>> 6];
+
+        mNotLastColumn = new long[mWords.length];
+        for (int i = 0; i < mSize; i++) {
+            if (i % width != width - 1) {
+                mNotLastColumn[i >>> 6] |= 1L << i;
+            }
+        }
+    }
+
+    public boolean get(int index) {
+        return (mWords[index >>> 6] & (1L << index)) != 0;
+    }
+
+    public void set(int index) {
+        mWords[index >>> 6] |= 1L << index;
+    }
+
+    public void clear(int index) {
+        mWords[index >>> 6] &= ~(1L << index);
+    }
+
+    public void clearAll() {
+        Arrays.fill(mWords, 0);
+    }
+
+    /** Get the number of cells in the set */
+    public int cardinality() {
+        int count = 0;
+        for (long word : mWords) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+
+    /**
+     * Find the next cell in the set.
+     * @param from the index to start searching from (inclusive)
+     * @return the index of the next cell or -1 if there are none
+     */
+    public int nextSetBit(int from) {
+        if (from >= mSize) {
+            return -1;
+        }
+
+        int w = from >>> 6;
+        long word = mWords[w] & (-1L << from);
+        while (word == 0) {
+            if (++w == mWords.length) {
+                return -1;
+            }
+            word = mWords[w];
+        }
+        return (w << 6) + Long.numberOfTrailingZeros(word);
+    }
+
+    /** Returns true if any two cells in the set are orthogonally adjacent */
+    public boolean hasAdjacentPair() {
+        for (int w = 0; w < mWords.length; w++) {
+            long word = mWords[w];
+            if ((word & shiftedWord(w, 1) & mNotLastColumn[w]) != 0
+                    || (word & shiftedWord(w, mWidth)) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Get the number of pairs of orthogonally adjacent cells in the set */
+    public int countAdjacentPairs() {
+        int count = 0;
+        for (int w = 0; w < mWords.length; w++) {
+            long word = mWords[w];
+            count += Long.bitCount(word & shiftedWord(w, 1) & mNotLastColumn[w]);
+            count += Long.bitCount(word & shiftedWord(w, mWidth));
+        }
+        return count;
+    }
+
+    /**
+     * Get word {@code w} of the set shifted towards lower indices by {@code shift} cells, so that
+     * bit i of the result is cell i + shift.
+     */
+    private long shiftedWord(int w, int shift) {
+        int src = w + (shift >>> 6);
+        int bits = shift & 63;
+        if (src >= mWords.length) {
+            return 0;
+        }
+
+        long word = mWords[src] >>> bits;
+        if (bits != 0 && src + 1 < mWords.length) {
+            word |= mWords[src + 1] << (64 - bits);
+        }
+        return word;
+    }
+}
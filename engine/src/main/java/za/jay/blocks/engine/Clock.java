@@ -0,0 +1,11 @@
+package za.jay.blocks.engine;
+
+/**
+ * A monotonic clock. Games read the time through a clock so they can be run on a
+ * {@link VirtualScheduler} as fast as they can be played.
+ */
+public interface Clock {
+
+    /** Get the current time in milliseconds. Only differences between times are meaningful. */
+    long now();
+}
@@ -0,0 +1,211 @@
+package za.jay.blocks.engine;
+
+/**
+ * The clock of a {@link GameMode#TIMED} game, kept as an absolute deadline on a
+ * {@link Scheduler} so however late its updates run the time remaining never drifts. The
+ * countdown can be paused and resumed, and frozen for a while: freezes that overlap stack, each
+ * adding its duration, and can be cancelled. The listener is called each time the remaining time,
+ * rounded up to the resolution, changes. Between changes no task is scheduled at all.
+ */
+public class Countdown {
+
+    /** Update the listener every second by default */
+    public static final long DEFAULT_RESOLUTION = 1000;
+
+    private final Scheduler mScheduler;
+    private final long mResolution;
+
+    private boolean mPlaying;
+    /** The time remaining as of {@link #mAnchorTime} */
+    private long mRemaining;
+    /** The time the countdown was last started or adjusted */
+    private long mAnchorTime;
+    /** While playing, the time a freeze ends, or 0 if not frozen */
+    private long mFreezeEnd;
+    /** While paused, the time left on a freeze */
+    private long mFreezeLeft;
+
+    /** The last value given to the listener, in multiples of the resolution rounded up */
+    private long mShownValue = -1;
+
+    private Listener mListener;
+
+    private final Runnable mUpdate = new Runnable() {
+        @Override
+        public void run() {
+            update();
+        }
+    };
+
+    /** Create a countdown with a given length in milliseconds, updated every second */
+    public Countdown(long length, Scheduler scheduler) {
+        this(length, DEFAULT_RESOLUTION, scheduler);
+    }
+
+    /**
+     * Create a countdown with a given length in milliseconds.
+     * @param resolution how often the listener is updated in milliseconds
+     */
+    public Countdown(long length, long resolution, Scheduler scheduler) {
+        mRemaining = length;
+        mResolution = resolution;
+        mScheduler = scheduler;
+    }
+
+    /** Start or resume the countdown */
+    public void play() {
+        if (!mPlaying && mRemaining > 0) {
+            long now = mScheduler.now();
+            mAnchorTime = now;
+            mFreezeEnd = mFreezeLeft > 0 ? now + mFreezeLeft : 0;
+            mFreezeLeft = 0;
+            mPlaying = true;
+            mScheduler.schedule(mUpdate, 0);
+        }
+    }
+
+    /** Pause the countdown if it was playing. Any freeze is paused too. */
+    public void pause() {
+        if (mPlaying) {
+            long now = mScheduler.now();
+            mRemaining = getRemaining(now);
+            mFreezeLeft = Math.max(0, mFreezeEnd - now);
+            mFreezeEnd = 0;
+            mPlaying = false;
+            mScheduler.cancel(mUpdate);
+        }
+    }
+
+    /**
+     * Stop the countdown for good, with the time remaining as it is now. The countdown can't be
+     * played again after this.
+     */
+    public void release() {
+        pause();
+        mRemaining = 0;
+        mFreezeLeft = 0;
+        mScheduler.release(mUpdate);
+    }
+
+    /**
+     * Stop the countdown for {@code duration} milliseconds. If it is already frozen the freeze is
+     * extended by the duration.
+     */
+    public void freeze(long duration) {
+        if (mPlaying) {
+            long now = mScheduler.now();
+            reanchor(now);
+            mFreezeEnd = Math.max(mFreezeEnd, now) + duration;
+            reschedule(now);
+        } else {
+            mFreezeLeft += duration;
+        }
+    }
+
+    /** End any freeze now */
+    public void cancelFreeze() {
+        if (mPlaying) {
+            long now = mScheduler.now();
+            reanchor(now);
+            mFreezeEnd = 0;
+            reschedule(now);
+        } else {
+            mFreezeLeft = 0;
+        }
+    }
+
+    public boolean isFrozen() {
+        return mPlaying ? mFreezeEnd > mScheduler.now() : mFreezeLeft > 0;
+    }
+
+    /** Get the time left on a freeze in milliseconds, or 0 if not frozen */
+    public long getFreezeRemaining() {
+        return mPlaying ? Math.max(0, mFreezeEnd - mScheduler.now()) : mFreezeLeft;
+    }
+
+    /** Returns true if the countdown is started and unpaused */
+    public boolean isPlaying() {
+        return mPlaying;
+    }
+
+    /** Get the time left in milliseconds */
+    public long getRemaining() {
+        return mPlaying ? getRemaining(mScheduler.now()) : mRemaining;
+    }
+
+    /** Get the time left at {@code now} while playing */
+    private long getRemaining(long now) {
+        return Math.max(0, getDeadline() - Math.max(now, Math.max(mAnchorTime, mFreezeEnd)));
+    }
+
+    /** Get the time the countdown reaches 0 while playing */
+    private long getDeadline() {
+        return Math.max(mAnchorTime, mFreezeEnd) + mRemaining;
+    }
+
+    /** Fold the time passed since the anchor into the remaining time */
+    private void reanchor(long now) {
+        mRemaining = getRemaining(now);
+        mAnchorTime = now;
+        if (mFreezeEnd <= now) {
+            mFreezeEnd = 0;
+        }
+    }
+
+    /** Schedule the next update for when the shown value next changes */
+    private void reschedule(long now) {
+        mScheduler.cancel(mUpdate);
+
+        long value = toValue(getRemaining(now));
+        if (value != mShownValue) {
+            mScheduler.schedule(mUpdate, 0);
+        } else {
+            // The value drops once the time remaining is no longer above the next value down
+            long nextChange = getDeadline() - (value - 1) * mResolution;
+            mScheduler.schedule(mUpdate, Math.max(0, nextChange - now));
+        }
+    }
+
+    /** Round a time up to a multiple of the resolution */
+    private long toValue(long remaining) {
+        return (remaining + mResolution - 1) / mResolution;
+    }
+
+    private void update() {
+        if (!mPlaying) {
+            return;
+        }
+
+        long now = mScheduler.now();
+        long remaining = getRemaining(now);
+        long value = toValue(remaining);
+        if (value != mShownValue) {
+            mShownValue = value;
+            if (mListener != null) {
+                mListener.onCountdownTick(remaining);
+            }
+        }
+
+        if (remaining == 0) {
+            mRemaining = 0;
+            mPlaying = false;
+            mScheduler.release(mUpdate);
+        } else if (mPlaying) {
+            reschedule(now);
+        }
+    }
+
+    /** Set the callback for the countdown */
+    public void setListener(Listener listener) {
+        mListener = listener;
+    }
+
+    /** Callback interface for countdown update */
+    public interface Listener {
+        /**
+         * Callback for each change in the countdown, as rounded up to its resolution
+         * @param remaining the amount of time remaining in the countdown in milliseconds
+         */
+        void onCountdownTick(long remaining);
+    }
+}
@@ -1,4 +1,4 @@
-package za.jay.blocks;
+package za.jay.blocks.engine;
 
 /**
  * Created by jamie on 2014/02/04.
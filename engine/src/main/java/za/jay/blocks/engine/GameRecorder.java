@@ -0,0 +1,135 @@
+package za.jay.blocks.engine;
+
+import java.util.Arrays;
+
+/**
+ * Records a game as a compact binary log that {@link GameReplayer} can play back. The log starts
+ * with a header holding everything needed to regenerate the boards:
+ * <pre>
+ *   magic byte, version byte, seed (8 bytes, big endian), mode ordinal byte,
+ *   width, height and palette size (varints)
+ * </pre>
+ * followed by one entry per move, each an opcode byte and its operands. Block indices are encoded
+ * as unsigned varints so they take a single byte on boards of up to 128 blocks.
+ */
+public class GameRecorder {
+
+    static final int MAGIC = 0xb1;
+    static final int VERSION = 1;
+
+    /** A path: block count, then the block indices in order */
+    static final int OP_PATH = 1;
+    /** A path closed into a loop: block count, the block indices in order, then the block the
+     *  path was closed on */
+    static final int OP_LOOP = 2;
+    /** A block removed with a shrinker: block index */
+    static final int OP_SHRINK = 3;
+    /** A colour removed with an expander: block index */
+    static final int OP_EXPAND = 4;
+    /** A block removed by double tapping: block index */
+    static final int OP_DOUBLE_TAP = 5;
+    /** The more moves (or time stop) power-up was used */
+    static final int OP_MORE_MOVES = 6;
+    /** The game was ended from outside, e.g. the time ran out */
+    static final int OP_FINISH = 7;
+
+    private byte[] mBuffer;
+    private int mLength;
+
+    public GameRecorder(long seed, GameMode mode, int width, int height, int paletteSize) {
+        mBuffer = new byte[64];
+
+        writeByte(MAGIC);
+        writeByte(VERSION);
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            writeByte((int) (seed >>> shift));
+        }
+        writeByte(mode.ordinal());
+        writeVarint(width);
+        writeVarint(height);
+        writeVarint(paletteSize);
+    }
+
+    /**
+     * Continue a recording made by another recorder, e.g. after the game was restored from a
+     * {@link GameSnapshot}.
+     * @param recording the log from {@link #toByteArray()}
+     */
+    public GameRecorder(byte[] recording) {
+        if (recording.length < 2 || (recording[0] & 0xff) != MAGIC
+                || (recording[1] & 0xff) != VERSION) {
+            throw new IllegalArgumentException("Not a game recording");
+        }
+        mBuffer = Arrays.copyOf(recording, Math.max(64, recording.length * 2));
+        mLength = recording.length;
+    }
+
+    /** Record a path of blocks that was removed */
+    public void recordPath(IntPath path) {
+        writeByte(OP_PATH);
+        writePath(path);
+    }
+
+    /** Record a path that was closed into a loop */
+    public void recordLoop(IntPath path) {
+        writeByte(OP_LOOP);
+        writePath(path);
+        writeVarint(path.getClosedOn());
+    }
+
+    private void writePath(IntPath path) {
+        writeVarint(path.size());
+        for (int i = 0; i < path.size(); i++) {
+            writeVarint(path.get(i));
+        }
+    }
+
+    public void recordShrink(int index) {
+        writeByte(OP_SHRINK);
+        writeVarint(index);
+    }
+
+    public void recordExpand(int index) {
+        writeByte(OP_EXPAND);
+        writeVarint(index);
+    }
+
+    public void recordDoubleTap(int index) {
+        writeByte(OP_DOUBLE_TAP);
+        writeVarint(index);
+    }
+
+    public void recordMoreMoves() {
+        writeByte(OP_MORE_MOVES);
+    }
+
+    public void recordFinish() {
+        writeByte(OP_FINISH);
+    }
+
+    /** Get the number of bytes recorded so far */
+    public int size() {
+        return mLength;
+    }
+
+    /** Get a copy of the log */
+    public byte[] toByteArray() {
+        return Arrays.copyOf(mBuffer, mLength);
+    }
+
+    private void writeByte(int b) {
+        if (mLength == mBuffer.length) {
+            mBuffer = Arrays.copyOf(mBuffer, mBuffer.length * 2);
+        }
+        mBuffer[mLength++] = (byte) b;
+    }
+
+    /** Write an unsigned int 7 bits at a time, least significant group first */
+    private void writeVarint(int value) {
+        while ((value & ~0x7f) != 0) {
+            writeByte((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        writeByte(value);
+    }
+}
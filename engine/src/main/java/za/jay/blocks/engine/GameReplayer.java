@@ -0,0 +1,123 @@
+package za.jay.blocks.engine;
+
+/**
+ * Plays back a log written by {@link GameRecorder} through a headless {@link GameSession}. Every
+ * move goes through the same rules as a live game, so a replayed score that doesn't match the
+ * score claimed for a game means the log or the game was tampered with.
+ */
+public class GameReplayer {
+
+    private final byte[] mLog;
+    private int mPosition;
+
+    private GameReplayer(byte[] log) {
+        mLog = log;
+    }
+
+    /**
+     * Replay a recorded game.
+     * @return the session at the end of the log
+     * @throws IllegalArgumentException if the log is malformed
+     */
+    public static GameSession replay(byte[] log) {
+        return new GameReplayer(log).run();
+    }
+
+    private GameSession run() {
+        if (readByte() != GameRecorder.MAGIC || readByte() != GameRecorder.VERSION) {
+            throw new IllegalArgumentException("Not a game recording");
+        }
+
+        long seed = 0;
+        for (int i = 0; i < 8; i++) {
+            seed = (seed << 8) | readByte();
+        }
+        GameMode[] modes = GameMode.values();
+        int mode = readByte();
+        if (mode >= modes.length) {
+            throw new IllegalArgumentException("Unknown game mode " + mode);
+        }
+        int width = readVarint();
+        int height = readVarint();
+        int paletteSize = readVarint();
+
+        // Only the equality of colours matters to the rules so any distinct values will do
+        int[] palette = new int[paletteSize];
+        for (int i = 0; i < paletteSize; i++) {
+            palette[i] = i;
+        }
+
+        GameSession session = new GameSession(modes[mode], width, height, palette, seed);
+        int size = width * height;
+        while (mPosition < mLog.length) {
+            int op = readByte();
+            switch (op) {
+                case GameRecorder.OP_PATH:
+                case GameRecorder.OP_LOOP: {
+                    int count = readVarint();
+                    session.beginPath(readIndex(size));
+                    for (int i = 1; i < count; i++) {
+                        session.extendPath(readIndex(size));
+                    }
+                    if (op == GameRecorder.OP_LOOP) {
+                        session.extendPath(readIndex(size));
+                    }
+                    session.endPath();
+                    break;
+                }
+                case GameRecorder.OP_SHRINK:
+                    applyPowerUp(session, PowerUp.SHRINKERS, readIndex(size));
+                    break;
+                case GameRecorder.OP_EXPAND:
+                    applyPowerUp(session, PowerUp.EXPANDERS, readIndex(size));
+                    break;
+                case GameRecorder.OP_DOUBLE_TAP:
+                    session.doubleTap(readIndex(size));
+                    break;
+                case GameRecorder.OP_MORE_MOVES:
+                    session.usePowerUp(PowerUp.MORE_MOVES);
+                    break;
+                case GameRecorder.OP_FINISH:
+                    session.finish();
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown opcode " + op);
+            }
+        }
+        return session;
+    }
+
+    private static void applyPowerUp(GameSession session, PowerUp powerUp, int index) {
+        if (session.getActivePowerUp() != powerUp) {
+            session.usePowerUp(powerUp);
+        }
+        session.tap(index);
+    }
+
+    private int readByte() {
+        if (mPosition >= mLog.length) {
+            throw new IllegalArgumentException("Unexpected end of recording");
+        }
+        return mLog[mPosition++] & 0xff;
+    }
+
+    private int readVarint() {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = readByte();
+            value |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed varint");
+    }
+
+    private int readIndex(int size) {
+        int index = readVarint();
+        if (index < 0 || index >= size) {
+            throw new IllegalArgumentException("Block index out of range " + index);
+        }
+        return index;
+    }
+}
@@ -0,0 +1,446 @@
+package za.jay.blocks.engine;
+
+/**
+ * The rules of a single game. A GameSession takes input events in terms of block indices (start,
+ * extend and end a path, tap or double tap a block, use a power-up) and reports the resulting
+ * changes in state to its {@link Listener}. It has no dependencies on Android so that games can be
+ * played headless.
+ */
+public class GameSession implements GridModel.GridBatchChangeListener {
+
+    /** Number of moves in a {@link GameMode#MOVES} game */
+    public static final int MOVES_LIMIT = 30;
+    /** Length of a {@link GameMode#TIMED} game in milliseconds */
+    public static final long TIME_LIMIT = 60 * 1000;
+
+    /** Moves added by the more moves power-up */
+    public static final int MORE_MOVES_BONUS = 5;
+    /** Length of the time stop power-up in milliseconds */
+    public static final long TIME_STOP_DURATION = 5000;
+
+    private final GameMode mMode;
+    private final long mSeed;
+    private final SplitMixRandom mRandom;
+    private final GridModel mModel;
+    private final MoveAnalyzer mAnalyzer;
+
+    private int mScore;
+    private int mMoves;
+    private int mMovesMade;
+    private boolean mOver;
+
+    private final IntPath mPath;
+
+    private PowerUp mActivePowerUp;
+    private boolean mMoreMovesUsed;
+    private boolean mExpandersUsed;
+
+    private Listener mListener;
+    private GameRecorder mRecorder;
+
+    public GameSession(GameMode mode, int width, int height, int[] colours) {
+        this(mode, width, height, colours, new SplitMixRandom().nextLong());
+    }
+
+    /** Create a game whose boards are generated from {@code seed} */
+    public GameSession(GameMode mode, int width, int height, int[] colours, long seed) {
+        mMode = mode;
+        mSeed = seed;
+        mRandom = new SplitMixRandom(seed);
+        mModel = new GridModel(width, height, colours, true, mRandom);
+        mAnalyzer = new MoveAnalyzer(mModel);
+        mModel.setGridBatchChangeListener(this);
+        mPath = new IntPath(width * height);
+
+        ensureMovesLeft();
+    }
+
+    public void setListener(Listener listener) {
+        mListener = listener;
+    }
+
+    /** Set a recorder that every move made in the game is written to */
+    public void setRecorder(GameRecorder recorder) {
+        mRecorder = recorder;
+    }
+
+    public GameMode getMode() {
+        return mMode;
+    }
+
+    /** Get the seed the boards of this game are generated from */
+    public long getSeed() {
+        return mSeed;
+    }
+
+    public GridModel getModel() {
+        return mModel;
+    }
+
+    public int getScore() {
+        return mScore;
+    }
+
+    public int getMoves() {
+        return mMoves;
+    }
+
+    /** Get the number of moves made, not counting those given back by the more moves power-up */
+    public int getMovesMade() {
+        return mMovesMade;
+    }
+
+    /** Get the number of moves left in a {@link GameMode#MOVES} game */
+    public int getMovesRemaining() {
+        return MOVES_LIMIT - mMoves;
+    }
+
+    public boolean isOver() {
+        return mOver;
+    }
+
+    /** Get the power-up waiting for a block to be tapped, or null if there is none */
+    public PowerUp getActivePowerUp() {
+        return mActivePowerUp;
+    }
+
+    /** Returns true if the power-up can still be used this game */
+    public boolean isPowerUpAvailable(PowerUp powerUp) {
+        switch (powerUp) {
+            case MORE_MOVES:
+                return !mMoreMovesUsed && mMode != GameMode.ENDLESS;
+            case EXPANDERS:
+                return !mExpandersUsed;
+            default:
+                return true;
+        }
+    }
+
+    boolean isMoreMovesUsed() {
+        return mMoreMovesUsed;
+    }
+
+    boolean isExpandersUsed() {
+        return mExpandersUsed;
+    }
+
+    /** Get the state of the generator the boards are drawn from */
+    long getRandomState() {
+        return mRandom.getState();
+    }
+
+    /**
+     * Put the game back into a state saved in a {@link GameSnapshot}. The listener isn't
+     * notified of anything but the board changing.
+     */
+    void restore(int score, int moves, int movesMade, boolean over, boolean moreMovesUsed,
+            boolean expandersUsed, PowerUp activePowerUp, long randomState, byte[] grid,
+            int gridOffset) {
+        mScore = score;
+        mMoves = moves;
+        mMovesMade = movesMade;
+        mOver = over;
+        mMoreMovesUsed = moreMovesUsed;
+        mExpandersUsed = expandersUsed;
+        mActivePowerUp = activePowerUp;
+        mPath.clear();
+        mRandom.setState(randomState);
+        mModel.setColourIndices(grid, gridOffset);
+    }
+
+    public MoveAnalyzer getAnalyzer() {
+        return mAnalyzer;
+    }
+
+    /** Find the best move on the board, or null if there are none */
+    public MoveAnalyzer.Move findHint() {
+        return mAnalyzer.findBestMove();
+    }
+
+    /**
+     * Use a power-up. More moves (or a time stop) take effect immediately, shrinkers and expanders
+     * are toggled on and off and take effect on the next tapped block.
+     */
+    public void usePowerUp(PowerUp powerUp) {
+        if (mOver || !isPowerUpAvailable(powerUp)) {
+            return;
+        }
+
+        switch (powerUp) {
+            case MORE_MOVES:
+                mMoreMovesUsed = true;
+                if (mRecorder != null) {
+                    mRecorder.recordMoreMoves();
+                }
+                if (mMode == GameMode.TIMED) {
+                    if (mListener != null) {
+                        mListener.onTimeStop(TIME_STOP_DURATION);
+                    }
+                } else {
+                    mMoves -= MORE_MOVES_BONUS;
+                    notifyMovesChanged();
+                }
+                notifyPowerUpUsed(powerUp);
+                break;
+            case SHRINKERS:
+            case EXPANDERS:
+                setActivePowerUp(mActivePowerUp != powerUp ? powerUp : null);
+                break;
+        }
+    }
+
+    private void setActivePowerUp(PowerUp powerUp) {
+        mActivePowerUp = powerUp;
+        if (mListener != null) {
+            mListener.onActivePowerUpChanged(powerUp);
+        }
+    }
+
+    /**
+     * Tap a block, applying the active power-up to it.
+     * @return true if a power-up was applied, false if the tap should start a path
+     */
+    public boolean tap(int index) {
+        if (mOver || mActivePowerUp == null) {
+            return false;
+        }
+
+        if (mActivePowerUp == PowerUp.SHRINKERS) {
+            if (mRecorder != null) {
+                mRecorder.recordShrink(index);
+            }
+            mModel.removeBlock(index);
+            setActivePowerUp(null);
+            increaseScore(1);
+            incrementMoves();
+        } else if (mActivePowerUp == PowerUp.EXPANDERS) {
+            if (mRecorder != null) {
+                mRecorder.recordExpand(index);
+            }
+            int removals = mModel.removeColor(mModel.getBlock(index));
+            mExpandersUsed = true;
+            setActivePowerUp(null);
+            notifyPowerUpUsed(PowerUp.EXPANDERS);
+            increaseScore(removals);
+            incrementMoves();
+        }
+        return true;
+    }
+
+    /** Double tapping a block shrinks it off the board */
+    public void doubleTap(int index) {
+        if (mOver) {
+            return;
+        }
+
+        if (mRecorder != null) {
+            mRecorder.recordDoubleTap(index);
+        }
+        mModel.removeBlock(index);
+        increaseScore(1);
+        incrementMoves();
+    }
+
+    /** Start a new path at a block */
+    public void beginPath(int index) {
+        if (mOver || !mPath.isEmpty()) {
+            return;
+        }
+
+        mPath.add(index);
+        if (mListener != null) {
+            mListener.onPathExtended(index, -1);
+        }
+    }
+
+    /**
+     * Drag the path onto a block. The path is extended if the block is an unselected neighbour of
+     * the same colour, shortened if it is the second to last block of the path or closed into a
+     * loop if it is any other selected neighbour.
+     */
+    public void extendPath(int index) {
+        if (mPath.isEmpty() || mPath.isClosed()) {
+            return;
+        }
+
+        int lastIndex = mPath.getLast();
+        if (index == lastIndex) {
+            return;
+        }
+
+        boolean linked = mModel.getBlock(index) == mModel.getBlock(lastIndex)
+                && isAdjacent(index, lastIndex);
+        if (!mPath.contains(index)) {
+            if (linked) {
+                mPath.add(index);
+                if (mListener != null) {
+                    mListener.onPathExtended(index, lastIndex);
+                }
+            }
+        } else if (mPath.size() >= 2) {
+            int lastLastIndex = mPath.getSecondLast();
+            if (index == lastLastIndex) {
+                // Backtracking: remove the last block from the path
+                mPath.removeLast();
+                if (mListener != null) {
+                    mListener.onPathBacktracked(lastIndex, lastLastIndex);
+                }
+            } else if (linked) {
+                mPath.close(index);
+                if (mListener != null) {
+                    mListener.onPathClosed(index, lastIndex);
+                }
+            }
+        }
+    }
+
+    /** Lift off the path, removing its blocks if it is long enough */
+    public void endPath() {
+        if (mPath.isEmpty()) {
+            return;
+        }
+
+        if (mPath.isClosed()) {
+            // Have a closed path, remove all blocks of same color
+            if (mRecorder != null) {
+                mRecorder.recordLoop(mPath);
+            }
+            int removals = mModel.removeColor(mModel.getBlock(mPath.get(0)));
+            clearPath();
+            increaseScore(removals);
+            incrementMoves();
+        } else if (mPath.size() >= 2) {
+            // Have a path, remove the blocks
+            if (mRecorder != null) {
+                mRecorder.recordPath(mPath);
+            }
+            int removals = mModel.removePath(mPath.getIndices(), mPath.size());
+            clearPath();
+            increaseScore(removals);
+            incrementMoves();
+        } else {
+            clearPath();
+        }
+    }
+
+    /** Abandon the path without removing any blocks */
+    public void clearPath() {
+        if (mListener != null) {
+            for (int i = 0; i < mPath.size(); i++) {
+                mListener.onBlockDeselected(mPath.get(i));
+            }
+        }
+        mPath.clear();
+    }
+
+    /** End the game, e.g. when time runs out */
+    public void finish() {
+        if (mOver) {
+            return;
+        }
+
+        if (mRecorder != null) {
+            mRecorder.recordFinish();
+        }
+        endGame();
+    }
+
+    private void endGame() {
+        clearPath();
+        mOver = true;
+        if (mListener != null) {
+            mListener.onGameOver(mScore);
+        }
+    }
+
+    /** Check if two indices are adjacent in the grid */
+    public boolean isAdjacent(int index1, int index2) {
+        if (index1 > index2) {
+            int temp = index1;
+            index1 = index2;
+            index2 = temp;
+        }
+
+        int width = mModel.getWidth();
+        return index1 == index2 - 1 && index2 % width != 0
+                || index1 == index2 - width;
+    }
+
+    /** Add {@code points} to the score */
+    private void increaseScore(int points) {
+        mScore += points;
+        if (mListener != null) {
+            mListener.onScoreChanged(mScore);
+        }
+    }
+
+    /** Increment the moves count by 1, ending a moves game if they run out */
+    private void incrementMoves() {
+        mMoves++;
+        mMovesMade++;
+        ensureMovesLeft();
+        notifyMovesChanged();
+
+        if (mMode == GameMode.MOVES && getMovesRemaining() <= 0) {
+            endGame();
+        }
+    }
+
+    /** Reshuffle the board until there is at least one move */
+    private void ensureMovesLeft() {
+        // A board where every block is a different colour can never have a move
+        for (int attempt = 0; attempt < 100 && !mAnalyzer.hasMoves(); attempt++) {
+            mModel.shuffle();
+        }
+    }
+
+    private void notifyMovesChanged() {
+        if (mListener != null) {
+            mListener.onMovesChanged(mMoves);
+        }
+    }
+
+    private void notifyPowerUpUsed(PowerUp powerUp) {
+        if (mListener != null) {
+            mListener.onPowerUpUsed(powerUp);
+        }
+    }
+
+    @Override
+    public void onBlocksChanged(int[] dirtyDepths) {
+        mAnalyzer.onBlocksChanged(dirtyDepths);
+        if (mListener != null) {
+            mListener.onBlocksChanged(dirtyDepths);
+        }
+    }
+
+    /** Callbacks for changes in the state of the game */
+    public interface Listener extends GridModel.GridBatchChangeListener {
+        /** The path was started at or extended to {@code index} from {@code previous} (or -1) */
+        void onPathExtended(int index, int previous);
+
+        /** The last block {@code removed} was dropped from the path, {@code last} is now the end */
+        void onPathBacktracked(int removed, int last);
+
+        /** The path was closed into a loop by linking {@code previous} to {@code index} */
+        void onPathClosed(int index, int previous);
+
+        /** The block is no longer part of a path */
+        void onBlockDeselected(int index);
+
+        void onScoreChanged(int score);
+
+        void onMovesChanged(int moves);
+
+        /** A power-up was selected or deselected (null) and is waiting for a block to be tapped */
+        void onActivePowerUpChanged(PowerUp powerUp);
+
+        /** A power-up was used up and can't be used again this game */
+        void onPowerUpUsed(PowerUp powerUp);
+
+        /** The clock should be stopped for {@code duration} milliseconds */
+        void onTimeStop(long duration);
+
+        void onGameOver(int score);
+    }
+}
@@ -0,0 +1,222 @@
+package za.jay.blocks.engine;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The complete state of a game in progress, saved whenever the game goes into the background so
+ * it can be restored exactly, board and all. The fixed fields take 61 bytes and the board one byte
+ * per block, but the snapshot also carries the whole recording of the game so far, which grows by
+ * a few bytes with every move. The format is:
+ * <pre>
+ *   magic byte, version byte, mode ordinal byte, flags byte,
+ *   active power-up byte (ordinal + 1, or 0 for none),
+ *   width, height and palette size (4 bytes each),
+ *   seed and random state (8 bytes each), score, moves and moves made (4 bytes each),
+ *   time remaining and time left on a freeze in milliseconds (8 bytes each),
+ *   one byte per block holding its colour's position in the palette,
+ *   recording length (4 bytes) and the {@link GameRecorder} log so far
+ * </pre>
+ * Multi-byte values are big endian. A path being dragged when the snapshot is taken isn't kept,
+ * the same as if the finger had been lifted off the board without ending it.
+ */
+public class GameSnapshot {
+
+    static final int MAGIC = 0xb5;
+    static final int VERSION = 2;
+
+    private static final int FLAG_OVER = 1;
+    private static final int FLAG_MORE_MOVES_USED = 1 << 1;
+    private static final int FLAG_EXPANDERS_USED = 1 << 2;
+
+    private static final int HEADER_SIZE = 5 + 3 * 4 + 2 * 8 + 3 * 4 + 2 * 8;
+    /** Colour positions are stored in a byte each */
+    private static final int MAX_PALETTE_SIZE = 256;
+
+    private final GameMode mMode;
+    private final int mWidth;
+    private final int mHeight;
+    private final int mPaletteSize;
+    private final int mFlags;
+    private final PowerUp mActivePowerUp;
+    private final long mSeed;
+    private final long mRandomState;
+    private final int mScore;
+    private final int mMoves;
+    private final int mMovesMade;
+    private final long mTimeRemaining;
+    private final long mFreezeRemaining;
+    private final byte[] mData;
+    private final int mGridOffset;
+    private final int mRecordingOffset;
+    private final int mRecordingLength;
+
+    /**
+     * Pack a game into a snapshot.
+     * @param timeRemaining the time left in a {@link GameMode#TIMED} game in milliseconds
+     * @param freezeRemaining the time left on a time stop in milliseconds, or 0
+     * @param recorder the recorder of the game, or null if it isn't being recorded
+     * @throws IllegalArgumentException if the palette has too many colours to pack
+     */
+    public static byte[] save(GameSession session, long timeRemaining, long freezeRemaining,
+            GameRecorder recorder) {
+        GridModel model = session.getModel();
+        if (model.getPaletteSize() > MAX_PALETTE_SIZE) {
+            throw new IllegalArgumentException("Can't save a palette of "
+                    + model.getPaletteSize() + " colours");
+        }
+        int cells = model.getWidth() * model.getHeight();
+        byte[] recording = recorder != null ? recorder.toByteArray() : new byte[0];
+
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + cells + 4 + recording.length);
+        buffer.put((byte) MAGIC);
+        buffer.put((byte) VERSION);
+        buffer.put((byte) session.getMode().ordinal());
+
+        int flags = 0;
+        if (session.isOver()) {
+            flags |= FLAG_OVER;
+        }
+        if (session.isMoreMovesUsed()) {
+            flags |= FLAG_MORE_MOVES_USED;
+        }
+        if (session.isExpandersUsed()) {
+            flags |= FLAG_EXPANDERS_USED;
+        }
+        buffer.put((byte) flags);
+        PowerUp active = session.getActivePowerUp();
+        buffer.put((byte) (active != null ? active.ordinal() + 1 : 0));
+
+        buffer.putInt(model.getWidth());
+        buffer.putInt(model.getHeight());
+        buffer.putInt(model.getPaletteSize());
+        buffer.putLong(session.getSeed());
+        buffer.putLong(session.getRandomState());
+        buffer.putInt(session.getScore());
+        buffer.putInt(session.getMoves());
+        buffer.putInt(session.getMovesMade());
+        buffer.putLong(timeRemaining);
+        buffer.putLong(freezeRemaining);
+
+        model.getColourIndices(buffer.array(), buffer.position());
+        buffer.position(buffer.position() + cells);
+
+        buffer.putInt(recording.length);
+        buffer.put(recording);
+        return buffer.array();
+    }
+
+    /**
+     * Unpack a snapshot made by {@link #save(GameSession, long, long, GameRecorder)}.
+     * @throws IllegalArgumentException if the data isn't a complete snapshot this version can
+     *                                  read
+     */
+    public static GameSnapshot read(byte[] data) {
+        if (data == null || data.length < HEADER_SIZE || (data[0] & 0xff) != MAGIC
+                || (data[1] & 0xff) != VERSION) {
+            throw new IllegalArgumentException("Not a game snapshot");
+        }
+        return new GameSnapshot(data);
+    }
+
+    private GameSnapshot(byte[] data) {
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        buffer.position(2);
+        int mode = buffer.get() & 0xff;
+        if (mode >= GameMode.values().length) {
+            throw new IllegalArgumentException("Unknown game mode " + mode);
+        }
+        mMode = GameMode.values()[mode];
+        mFlags = buffer.get();
+        int active = buffer.get() & 0xff;
+        if (active > PowerUp.values().length) {
+            throw new IllegalArgumentException("Unknown power-up " + active);
+        }
+        mActivePowerUp = active > 0 ? PowerUp.values()[active - 1] : null;
+
+        mWidth = buffer.getInt();
+        mHeight = buffer.getInt();
+        mPaletteSize = buffer.getInt();
+        if (mWidth <= 0 || mHeight <= 0 || mPaletteSize <= 0
+                || mPaletteSize > MAX_PALETTE_SIZE) {
+            throw new IllegalArgumentException("Bad board size " + mWidth + "x" + mHeight
+                    + " with " + mPaletteSize + " colours");
+        }
+        mSeed = buffer.getLong();
+        mRandomState = buffer.getLong();
+        mScore = buffer.getInt();
+        mMoves = buffer.getInt();
+        mMovesMade = buffer.getInt();
+        mTimeRemaining = buffer.getLong();
+        mFreezeRemaining = buffer.getLong();
+
+        mData = data;
+        mGridOffset = buffer.position();
+        long cells = (long) mWidth * mHeight;
+        if (cells + 4 > buffer.remaining()) {
+            throw new IllegalArgumentException("Snapshot is cut short");
+        }
+        for (int i = 0; i < cells; i++) {
+            if ((data[mGridOffset + i] & 0xff) >= mPaletteSize) {
+                throw new IllegalArgumentException("Bad colour at block " + i);
+            }
+        }
+        buffer.position(mGridOffset + (int) cells);
+        mRecordingLength = buffer.getInt();
+        mRecordingOffset = buffer.position();
+        if (mRecordingLength < 0 || mRecordingLength != buffer.remaining()) {
+            throw new IllegalArgumentException("Bad recording length " + mRecordingLength);
+        }
+    }
+
+    public GameMode getMode() {
+        return mMode;
+    }
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+
+    /** Get the time that was left in a {@link GameMode#TIMED} game in milliseconds */
+    public long getTimeRemaining() {
+        return mTimeRemaining;
+    }
+
+    /** Get the time that was left on a time stop in milliseconds, or 0 if there wasn't one */
+    public long getFreezeRemaining() {
+        return mFreezeRemaining;
+    }
+
+    /**
+     * Create a session in the saved state.
+     * @param colours the colours of the saved game's palette, in the same order
+     * @throws IllegalArgumentException if the palette has a different number of colours
+     */
+    public GameSession createSession(int[] colours) {
+        if (colours.length != mPaletteSize) {
+            throw new IllegalArgumentException("Snapshot has " + mPaletteSize + " colours, not "
+                    + colours.length);
+        }
+        GameSession session = new GameSession(mMode, mWidth, mHeight, colours, mSeed);
+        session.restore(mScore, mMoves, mMovesMade, (mFlags & FLAG_OVER) != 0,
+                (mFlags & FLAG_MORE_MOVES_USED) != 0, (mFlags & FLAG_EXPANDERS_USED) != 0,
+                mActivePowerUp, mRandomState, mData, mGridOffset);
+        return session;
+    }
+
+    /**
+     * Create a recorder that continues the saved recording, or null if there wasn't one.
+     * @throws IllegalArgumentException if the recording is corrupt
+     */
+    public GameRecorder createRecorder() {
+        if (mRecordingLength == 0) {
+            return null;
+        }
+        byte[] recording = new byte[mRecordingLength];
+        System.arraycopy(mData, mRecordingOffset, recording, 0, mRecordingLength);
+        return new GameRecorder(recording);
+    }
+}
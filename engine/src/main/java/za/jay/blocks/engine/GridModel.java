@@ -0,0 +1,499 @@
+package za.jay.blocks.engine;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Created by jamie on 2014/02/01.
+ */
+public class GridModel {
+
+    private final int[] mColours;
+    private final int mWidth;
+    private final int mHeight;
+
+    private final RandomSource mRandom;
+    private int[] mGrid;
+
+    /** One set of cells per entry in mColours, or null if bitboards are not in use */
+    private final Bitboard[] mColourBoards;
+
+    /** For each column, the number of rows from the top changed by the current operation */
+    private final int[] mDirtyDepths;
+    private boolean mDirty;
+    /** For each cell, the number of rows its block fell in the current operation */
+    private final int[] mFallDistances;
+
+    /** Blocks marked for removal by the next {@link #compact()} */
+    private final boolean[] mRemoved;
+    private final int[] mRemovedCounts;
+    private int mRemovedTotal;
+    /** Colour positions drawn for refilling a column */
+    private final int[] mRefill;
+
+    private GridBatchChangeListener mListener;
+    private OperationTimer mTimer;
+
+    public GridModel(int width, int height, int[] colours) {
+        this(width, height, colours, false);
+    }
+
+    /**
+     * Create a grid model.
+     * @param useBitboards if true, a {@link Bitboard} of the cells of each colour is kept up to date
+     *                     alongside the grid for fast colour counts and adjacency tests
+     */
+    public GridModel(int width, int height, int[] colours, boolean useBitboards) {
+        this(width, height, colours, useBitboards, new SplitMixRandom());
+    }
+
+    /**
+     * Create a grid model that draws its colours from {@code random}. Models created with the
+     * same seeded source and given the same operations produce the same boards.
+     */
+    public GridModel(int width, int height, int[] colours, boolean useBitboards,
+                     RandomSource random) {
+        mWidth = width;
+        mHeight = height;
+        mColours = colours;
+
+        mRandom = random;
+        mGrid = new int[width * height];
+        mDirtyDepths = new int[width];
+        mFallDistances = new int[width * height];
+        mRemoved = new boolean[width * height];
+        mRemovedCounts = new int[width];
+        mRefill = new int[height];
+
+        if (useBitboards) {
+            mColourBoards = new Bitboard[colours.length];
+            for (int i = 0; i < colours.length; i++) {
+                mColourBoards[i] = new Bitboard(width, height);
+            }
+        } else {
+            mColourBoards = null;
+        }
+
+        fillGrid();
+    }
+
+    /** Fills the grid with randomly chosen colours */
+    public void fillGrid() {
+        long start = startTiming();
+        if (mColourBoards != null) {
+            for (Bitboard board : mColourBoards) {
+                board.clearAll();
+            }
+        }
+
+        for (int i = 0; i < mWidth * mHeight; i++) {
+            int colour = randomColour();
+            mGrid[i] = colour;
+            if (mColourBoards != null) {
+                mColourBoards[colourIndex(colour)].set(i);
+            }
+        }
+
+        Arrays.fill(mDirtyDepths, mHeight);
+        mDirty = true;
+        stopTiming(Operation.FILL, start);
+        dispatchChanges();
+    }
+
+    /** Chooses a random value from the set of predefined colours */
+    private int randomColour() {
+        return mColours[mRandom.nextInt(mColours.length)];
+    }
+
+    /** Get the position of a colour in the set of predefined colours, or -1 if it isn't one */
+    private int colourIndex(int colour) {
+        for (int i = 0; i < mColours.length; i++) {
+            if (mColours[i] == colour) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /** Get the number of columns in the grid */
+    public int getWidth() {
+        return mWidth;
+    }
+
+    /** Get the number of rows in the grid */
+    public int getHeight() {
+        return mHeight;
+    }
+
+    /** Get the number of predefined colours blocks can be */
+    public int getPaletteSize() {
+        return mColours.length;
+    }
+
+    /**
+     * Get the color of a block at a given index.
+     * @param index
+     * @return
+     */
+    public int getBlock(int index) {
+        return mGrid[index];
+    }
+
+    /**
+     * Write the colour of each block, as its position in the set of predefined colours, to
+     * {@code dest} from {@code offset}.
+     */
+    public void getColourIndices(byte[] dest, int offset) {
+        for (int i = 0; i < mGrid.length; i++) {
+            dest[offset + i] = (byte) colourIndex(mGrid[i]);
+        }
+    }
+
+    /**
+     * Replace every block with the colours written by {@link #getColourIndices(byte[], int)}.
+     * The whole grid is reported as changed.
+     */
+    public void setColourIndices(byte[] src, int offset) {
+        if (mColourBoards != null) {
+            for (Bitboard board : mColourBoards) {
+                board.clearAll();
+            }
+        }
+
+        for (int i = 0; i < mGrid.length; i++) {
+            int colourIndex = src[offset + i] & 0xff;
+            mGrid[i] = mColours[colourIndex];
+            if (mColourBoards != null) {
+                mColourBoards[colourIndex].set(i);
+            }
+        }
+
+        Arrays.fill(mDirtyDepths, mHeight);
+        mDirty = true;
+        dispatchChanges();
+    }
+
+    /** Removes a given block, "trickling down" the above blocks */
+    public void removeBlock(int index) {
+        long start = startTiming();
+        trickleDown(index);
+        stopTiming(Operation.REMOVE_BLOCK, start);
+        dispatchChanges();
+    }
+
+    /** Internal method to remove a block without notifying the listener */
+    private void trickleDown(int index) {
+        for (int i = index; i >= mWidth; i -= mWidth) {
+            setBlock(i, mGrid[i - mWidth]);
+            mFallDistances[i] = 1;
+        }
+
+        setBlock(index % mWidth, randomColour());
+        mFallDistances[index % mWidth] = 1;
+    }
+
+    /** Internal method to update blocks that marks the block's column as changed */
+    private void setBlock(int index, int value) {
+        if (mColourBoards != null) {
+            mColourBoards[colourIndex(mGrid[index])].clear(index);
+            mColourBoards[colourIndex(value)].set(index);
+        }
+        mGrid[index] = value;
+
+        int column = index % mWidth;
+        int depth = index / mWidth + 1;
+        if (depth > mDirtyDepths[column]) {
+            mDirtyDepths[column] = depth;
+        }
+        mDirty = true;
+    }
+
+    /** Randomly rearranges the blocks already on the grid */
+    public void shuffle() {
+        long start = startTiming();
+        for (int i = mGrid.length - 1; i > 0; i--) {
+            int j = mRandom.nextInt(i + 1);
+            int temp = mGrid[i];
+            setBlock(i, mGrid[j]);
+            setBlock(j, temp);
+        }
+        stopTiming(Operation.SHUFFLE, start);
+        dispatchChanges();
+    }
+
+    /** Mark a block to be removed by the next {@link #compact()} */
+    private void markRemoved(int index) {
+        if (!mRemoved[index]) {
+            mRemoved[index] = true;
+            mRemovedCounts[index % mWidth]++;
+            mRemovedTotal++;
+        }
+    }
+
+    /**
+     * Removes all the marked blocks. Each affected column is compacted once from the bottom up
+     * and then refilled at the top with colours drawn in one call. As with
+     * {@link #removeBlock(int)}, each new block pushes the ones drawn before it down, so the first
+     * colour drawn for a column ends up lowest.
+     */
+    private void compact() {
+        if (mRemovedTotal == 0) {
+            return;
+        }
+
+        for (int col = 0; col < mWidth; col++) {
+            int removed = mRemovedCounts[col];
+            if (removed == 0) {
+                continue;
+            }
+
+            // Move the remaining blocks down into the gaps, clearing the marks on the way
+            int dest = col + (mHeight - 1) * mWidth;
+            for (int src = dest; src >= 0; src -= mWidth) {
+                if (mRemoved[src]) {
+                    mRemoved[src] = false;
+                } else {
+                    if (src != dest) {
+                        setBlock(dest, mGrid[src]);
+                        mFallDistances[dest] = (dest - src) / mWidth;
+                    }
+                    dest -= mWidth;
+                }
+            }
+
+            // Refill the top of the column, the new blocks fall in from above the grid
+            mRandom.nextInts(mRefill, 0, removed, mColours.length);
+            for (int row = 0; row < removed; row++) {
+                setBlock(col + row * mWidth, mColours[mRefill[removed - 1 - row]]);
+                mFallDistances[col + row * mWidth] = removed;
+            }
+            mRemovedCounts[col] = 0;
+        }
+        mRemovedTotal = 0;
+    }
+
+    private long startTiming() {
+        return mTimer != null ? System.nanoTime() : 0;
+    }
+
+    private void stopTiming(Operation operation, long start) {
+        if (mTimer != null) {
+            mTimer.onOperationTimed(operation, System.nanoTime() - start);
+        }
+    }
+
+    /** Notify the listener of all the changes since the last dispatch */
+    private void dispatchChanges() {
+        if (!mDirty) {
+            return;
+        }
+
+        if (mListener != null) {
+            mListener.onBlocksChanged(mDirtyDepths);
+        }
+
+        // Falls can only have happened in the changed rows
+        for (int col = 0; col < mWidth; col++) {
+            for (int row = 0; row < mDirtyDepths[col]; row++) {
+                mFallDistances[col + row * mWidth] = 0;
+            }
+        }
+        Arrays.fill(mDirtyDepths, 0);
+        mDirty = false;
+    }
+
+    /**
+     * Removes all blocks of the same color as {@code color}.
+     * @param color The color of the blocks to remove
+     * @return The number of blocks removed
+     */
+    public int removeColor(int color) {
+        // Find all of blocks of same color
+        long start = startTiming();
+        int count = 0;
+        Bitboard board = getColourBoard(color);
+        if (board != null) {
+            for (int i = board.nextSetBit(0); i >= 0; i = board.nextSetBit(i + 1)) {
+                markRemoved(i);
+                count++;
+            }
+        } else {
+            for (int i = 0; i < mGrid.length; i++) {
+                if (mGrid[i] == color) {
+                    markRemoved(i);
+                    count++;
+                }
+            }
+        }
+
+        // Remove all those blocks in one pass
+        compact();
+        stopTiming(Operation.REMOVE_COLOR, start);
+        dispatchChanges();
+
+        return count;
+    }
+
+    /**
+     * Removes the list of block indices from the grid.
+     * @param path A list if block indices
+     * @return The number of blocks removes ({@code path.size()})
+     */
+    public int removePath(List<Integer> path) {
+        // The order the blocks are removed in is handled by compact()
+        long start = startTiming();
+        for (int i = 0; i < path.size(); i++) {
+            markRemoved(path.get(i));
+        }
+        compact();
+        stopTiming(Operation.REMOVE_PATH, start);
+        dispatchChanges();
+
+        return path.size();
+    }
+
+    /**
+     * Removes the first {@code length} block indices in an array from the grid.
+     * @return The number of blocks removed ({@code length})
+     */
+    public int removePath(int[] path, int length) {
+        long start = startTiming();
+        for (int i = 0; i < length; i++) {
+            markRemoved(path[i]);
+        }
+        compact();
+        stopTiming(Operation.REMOVE_PATH, start);
+        dispatchChanges();
+
+        return length;
+    }
+
+    /**
+     * Get the number of rows the block at an index fell in the operation being dispatched, or 0 if
+     * it didn't move. New blocks fall in from above the grid, so a block that fell further than
+     * its row was added by the operation. Only valid during
+     * {@link GridBatchChangeListener#onBlocksChanged(int[])}.
+     */
+    public int getFallDistance(int index) {
+        return mFallDistances[index];
+    }
+
+    /**
+     * Get the cells of a given colour. The returned set is owned by the model and must not be
+     * modified.
+     * @return the set of cells or null if bitboards are not in use or the colour is unknown
+     */
+    public Bitboard getColourBoard(int color) {
+        if (mColourBoards == null) {
+            return null;
+        }
+        int i = colourIndex(color);
+        return i >= 0 ? mColourBoards[i] : null;
+    }
+
+    /** Get the number of blocks of a given colour */
+    public int getColourCount(int color) {
+        Bitboard board = getColourBoard(color);
+        if (board != null) {
+            return board.cardinality();
+        }
+
+        int count = 0;
+        for (int block : mGrid) {
+            if (block == color) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /** Returns true if any two blocks of the given colour are next to each other */
+    public boolean hasAdjacentPair(int color) {
+        Bitboard board = getColourBoard(color);
+        if (board != null) {
+            return board.hasAdjacentPair();
+        }
+
+        for (int i = 0; i < mGrid.length; i++) {
+            if (mGrid[i] != color) {
+                continue;
+            }
+            if ((i % mWidth != mWidth - 1 && mGrid[i + 1] == color)
+                    || (i + mWidth < mGrid.length && mGrid[i + mWidth] == color)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Set a listener that is notified of each block that changes */
+    public void setGridChangeListener(GridChangeListener listener) {
+        mListener = listener != null ? new BlockChangeAdapter(this, listener) : null;
+    }
+
+    /** Set a listener that is notified once for all the blocks changed by an operation */
+    public void setGridBatchChangeListener(GridBatchChangeListener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * Set a timer that is told how long each operation took, not including notifying the
+     * listener of its changes.
+     */
+    public void setOperationTimer(OperationTimer timer) {
+        mTimer = timer;
+    }
+
+    /** The operations that change the grid */
+    public enum Operation {
+        FILL, REMOVE_BLOCK, REMOVE_PATH, REMOVE_COLOR, SHUFFLE
+    }
+
+    public interface OperationTimer {
+        /** An operation on the grid took {@code nanos} nanoseconds */
+        void onOperationTimed(Operation operation, long nanos);
+    }
+
+    public interface GridChangeListener {
+        /**
+         * This method is called when the color of a block changes.
+         * @param index The index of the block in the grid
+         * @param newColor The new color assigned to the block
+         */
+        void onBlockChange(int index, int newColor);
+    }
+
+    public interface GridBatchChangeListener {
+        /**
+         * This method is called once after each operation that changes the grid. Blocks only
+         * ever trickle down so the changed blocks in a column are always a run from the top.
+         * @param dirtyDepths For each column, the number of rows from the top of the column that
+         *                    changed (0 if the column is unchanged). Only valid for the duration
+         *                    of the call.
+         */
+        void onBlocksChanged(int[] dirtyDepths);
+    }
+
+    /** Adapts batched change notifications to a per-block {@link GridChangeListener} */
+    public static class BlockChangeAdapter implements GridBatchChangeListener {
+
+        private final GridModel mModel;
+        private final GridChangeListener mListener;
+
+        public BlockChangeAdapter(GridModel model, GridChangeListener listener) {
+            mModel = model;
+            mListener = listener;
+        }
+
+        @Override
+        public void onBlocksChanged(int[] dirtyDepths) {
+            int width = mModel.getWidth();
+            for (int col = 0; col < dirtyDepths.length; col++) {
+                for (int row = 0; row < dirtyDepths[col]; row++) {
+                    int index = col + row * width;
+                    mListener.onBlockChange(index, mModel.getBlock(index));
+                }
+            }
+        }
+    }
+}
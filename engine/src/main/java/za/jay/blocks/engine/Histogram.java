@@ -0,0 +1,162 @@
+package za.jay.blocks.engine;
+
+import java.util.Arrays;
+
+/**
+ * A fixed size histogram of non-negative values with bounded relative error, in the style of
+ * HdrHistogram. Values below {@link #SUB_BUCKETS} are counted exactly. Above that, each power of
+ * two range is split into {@code SUB_BUCKETS / 2} equal buckets, so a recorded value is off by at
+ * most 1 part in 64. Recording is O(1) and never allocates. Values too big to fit are counted in
+ * the last bucket.
+ */
+public class Histogram {
+
+    private static final int SUB_BUCKET_BITS = 7;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int HALF_SUB_BUCKETS = SUB_BUCKETS / 2;
+
+    private final long[] mCounts;
+    private final long mHighestTrackable;
+    private long mTotal;
+    private long mMin = Long.MAX_VALUE;
+    private long mMax;
+    private double mSum;
+
+    /**
+     * Create a histogram of values from 0 up to at least {@code highestTrackable}.
+     */
+    public Histogram(long highestTrackable) {
+        mHighestTrackable = highestTrackable;
+        int bits = 64 - Long.numberOfLeadingZeros(Math.max(highestTrackable, SUB_BUCKETS - 1));
+        mCounts = new long[SUB_BUCKETS + (bits - SUB_BUCKET_BITS) * HALF_SUB_BUCKETS];
+    }
+
+    public void record(long value) {
+        record(value, 1);
+    }
+
+    /** Record {@code count} occurrences of a value */
+    public void record(long value, long count) {
+        if (value < 0) {
+            value = 0;
+        }
+        int index = Math.min(bucketIndex(value), mCounts.length - 1);
+        mCounts[index] += count;
+        mTotal += count;
+        mSum += (double) value * count;
+        mMin = Math.min(mMin, value);
+        mMax = Math.max(mMax, value);
+    }
+
+    /**
+     * Get the bucket a value is counted in. Buckets don't depend on the range of the histogram,
+     * so bucket counts can be stored elsewhere and recorded back with
+     * {@link #getBucketHighestValue(int)}.
+     */
+    public static int getBucket(long value) {
+        return bucketIndex(Math.max(value, 0));
+    }
+
+    /** Get the highest value that would be counted in a bucket */
+    public static long getBucketHighestValue(int bucket) {
+        return bucketHighestValue(bucket);
+    }
+
+    private static int bucketIndex(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = 64 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        int top = (int) (value >>> shift);
+        return SUB_BUCKETS + (shift - 1) * HALF_SUB_BUCKETS + (top - HALF_SUB_BUCKETS);
+    }
+
+    /** Get the lowest value that would be counted in a bucket */
+    private static long bucketLowestValue(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = (index - SUB_BUCKETS) / HALF_SUB_BUCKETS + 1;
+        long top = (index - SUB_BUCKETS) % HALF_SUB_BUCKETS + HALF_SUB_BUCKETS;
+        return top << shift;
+    }
+
+    /** Get the highest value that would be counted in a bucket */
+    private static long bucketHighestValue(int index) {
+        return bucketLowestValue(index + 1) - 1;
+    }
+
+    /** Add all the values recorded in another histogram with the same range */
+    public void add(Histogram other) {
+        if (other.mCounts.length != mCounts.length) {
+            throw new IllegalArgumentException("Histograms have different ranges");
+        }
+        for (int i = 0; i < mCounts.length; i++) {
+            mCounts[i] += other.mCounts[i];
+        }
+        mTotal += other.mTotal;
+        mSum += other.mSum;
+        mMin = Math.min(mMin, other.mMin);
+        mMax = Math.max(mMax, other.mMax);
+    }
+
+    public void reset() {
+        Arrays.fill(mCounts, 0);
+        mTotal = 0;
+        mSum = 0;
+        mMin = Long.MAX_VALUE;
+        mMax = 0;
+    }
+
+    public long getTotalCount() {
+        return mTotal;
+    }
+
+    /** Get the smallest value recorded, or 0 if nothing has been recorded */
+    public long getMin() {
+        return mTotal > 0 ? mMin : 0;
+    }
+
+    public long getMax() {
+        return mMax;
+    }
+
+    public double getMean() {
+        return mTotal > 0 ? mSum / mTotal : 0;
+    }
+
+    /**
+     * Get the value that {@code percentile} percent of the recorded values are at or below. The
+     * value is the highest value of the bucket the percentile falls in, capped at the maximum.
+     */
+    public long getValueAtPercentile(double percentile) {
+        if (mTotal == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(percentile / 100 * mTotal));
+        long count = 0;
+        for (int i = 0; i < mCounts.length; i++) {
+            count += mCounts[i];
+            if (count >= target) {
+                return Math.min(bucketHighestValue(i), mMax);
+            }
+        }
+        return mMax;
+    }
+
+    /** Get the highest value that can be recorded without being clamped */
+    public long getHighestTrackable() {
+        return mHighestTrackable;
+    }
+
+    /**
+     * Summarise the histogram on one line, scaling values down by {@code divisor}, e.g. 1000 to
+     * show microsecond values as milliseconds.
+     */
+    public String summarise(double divisor) {
+        return String.format("n=%d mean=%.2f p50=%.2f p90=%.2f p99=%.2f p99.9=%.2f max=%.2f",
+                mTotal, getMean() / divisor, getValueAtPercentile(50) / divisor,
+                getValueAtPercentile(90) / divisor, getValueAtPercentile(99) / divisor,
+                getValueAtPercentile(99.9) / divisor, mMax / divisor);
+    }
+}
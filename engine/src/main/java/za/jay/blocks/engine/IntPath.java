@@ -0,0 +1,100 @@
+package za.jay.blocks.engine;
+
+import java.util.Arrays;
+
+/**
+ * A path of block indices stored without boxing. Membership is tracked in a bitset alongside the
+ * indices so that checking whether a block is on the path, adding a block and backtracking are
+ * all O(1). A path can be closed into a loop by linking its last block back to any block on it.
+ * Nothing is allocated after the path is created.
+ */
+public class IntPath {
+
+    private final int[] mIndices;
+    private final long[] mMembers;
+    private int mSize;
+    private int mClosedOn = -1;
+
+    /** Create a path that can hold up to {@code capacity} blocks with indices below capacity */
+    public IntPath(int capacity) {
+        mIndices = new int[capacity];
+        mMembers = new long[(capacity + 63) >>> 6];
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public boolean isEmpty() {
+        return mSize == 0;
+    }
+
+    public int get(int i) {
+        return mIndices[i];
+    }
+
+    /** Get the last block on the path, or -1 if the path is empty */
+    public int getLast() {
+        return mSize > 0 ? mIndices[mSize - 1] : -1;
+    }
+
+    /** Get the second to last block on the path, or -1 if there isn't one */
+    public int getSecondLast() {
+        return mSize > 1 ? mIndices[mSize - 2] : -1;
+    }
+
+    public boolean contains(int index) {
+        return (mMembers[index >>> 6] & (1L << index)) != 0;
+    }
+
+    /** Add a block to the end of the path. The block must not already be on the path. */
+    public void add(int index) {
+        mIndices[mSize++] = index;
+        mMembers[index >>> 6] |= 1L << index;
+    }
+
+    /**
+     * Remove the last block from the path.
+     * @return the block removed
+     */
+    public int removeLast() {
+        int index = mIndices[--mSize];
+        mMembers[index >>> 6] &= ~(1L << index);
+        return index;
+    }
+
+    /** Close the path into a loop by linking the last block to {@code index}, already on the path */
+    public void close(int index) {
+        mClosedOn = index;
+    }
+
+    public boolean isClosed() {
+        return mClosedOn >= 0;
+    }
+
+    /** Get the block the path was closed on, or -1 if the path isn't closed */
+    public int getClosedOn() {
+        return mClosedOn;
+    }
+
+    /**
+     * Get the array holding the blocks of the path. Only the first {@link #size()} entries are
+     * part of the path and the array must not be modified.
+     */
+    public int[] getIndices() {
+        return mIndices;
+    }
+
+    /** Get a copy of the blocks on the path */
+    public int[] toArray() {
+        return Arrays.copyOf(mIndices, mSize);
+    }
+
+    public void clear() {
+        for (int i = 0; i < mSize; i++) {
+            mMembers[mIndices[i] >>> 6] = 0;
+        }
+        mSize = 0;
+        mClosedOn = -1;
+    }
+}
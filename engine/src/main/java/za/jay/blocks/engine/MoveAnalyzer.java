@@ -0,0 +1,406 @@
+package za.jay.blocks.engine;
+
+import java.util.Arrays;
+
+/**
+ * Keeps track of the moves available on a {@link GridModel}. A move exists wherever two
+ * orthogonally adjacent blocks share a colour. The links between such blocks are kept in two
+ * {@link Bitboard}s and only the links touching changed blocks are recomputed after each
+ * operation, so checking for a dead board is O(1). Finding the best move is done on demand.
+ */
+public class MoveAnalyzer implements GridModel.GridBatchChangeListener {
+
+    /** Limit on the number of starting blocks tried per group when searching for a long path */
+    private static final int MAX_PATH_STARTS = 8;
+
+    private final GridModel mModel;
+    private final int mWidth;
+    private final int mHeight;
+
+    /** Blocks with a same coloured block to their right */
+    private final Bitboard mRightLinks;
+    /** Blocks with a same coloured block below them */
+    private final Bitboard mDownLinks;
+    private int mLinkCount;
+
+    // Scratch space for findBestMove()
+    private final int[] mParents;
+    private final int[] mGroupSizes;
+    private final int[] mGroupLinks;
+    /** The first block of each group by index, at its root, or -1 */
+    private final int[] mGroupHeads;
+    /** The next block of the same group by index, or -1 for the last */
+    private final int[] mNextMembers;
+    private final int[] mVisited;
+    private int mVisitStamp;
+    private final int[] mStack;
+    private final int[] mNeighbourCursors;
+    private final int[] mPath;
+
+    public MoveAnalyzer(GridModel model) {
+        mModel = model;
+        mWidth = model.getWidth();
+        mHeight = model.getHeight();
+
+        mRightLinks = new Bitboard(mWidth, mHeight);
+        mDownLinks = new Bitboard(mWidth, mHeight);
+
+        int size = mWidth * mHeight;
+        mParents = new int[size];
+        mGroupSizes = new int[size];
+        mGroupLinks = new int[size];
+        mGroupHeads = new int[size];
+        mNextMembers = new int[size];
+        mVisited = new int[size];
+        mStack = new int[size];
+        mNeighbourCursors = new int[size];
+        mPath = new int[size];
+
+        rebuild();
+    }
+
+    /** Recompute all the links from scratch */
+    public void rebuild() {
+        mRightLinks.clearAll();
+        mDownLinks.clearAll();
+        mLinkCount = 0;
+        for (int i = 0; i < mWidth * mHeight; i++) {
+            updateLinks(i);
+        }
+    }
+
+    @Override
+    public void onBlocksChanged(int[] dirtyDepths) {
+        for (int col = 0; col < dirtyDepths.length; col++) {
+            for (int row = 0; row < dirtyDepths[col]; row++) {
+                int index = col + row * mWidth;
+                updateLinks(index);
+                if (col > 0) {
+                    updateRightLink(index - 1);
+                }
+            }
+        }
+    }
+
+    /** Recompute the links from a block to the blocks right of and below it */
+    private void updateLinks(int index) {
+        updateRightLink(index);
+
+        boolean linked = index + mWidth < mWidth * mHeight
+                && mModel.getBlock(index) == mModel.getBlock(index + mWidth);
+        updateLink(mDownLinks, index, linked);
+    }
+
+    private void updateRightLink(int index) {
+        boolean linked = index % mWidth != mWidth - 1
+                && mModel.getBlock(index) == mModel.getBlock(index + 1);
+        updateLink(mRightLinks, index, linked);
+    }
+
+    private void updateLink(Bitboard links, int index, boolean linked) {
+        if (links.get(index) != linked) {
+            if (linked) {
+                links.set(index);
+                mLinkCount++;
+            } else {
+                links.clear(index);
+                mLinkCount--;
+            }
+        }
+    }
+
+    /** Returns true if there is at least one move left on the board */
+    public boolean hasMoves() {
+        return mLinkCount > 0;
+    }
+
+    /** Get the number of pairs of adjacent same coloured blocks, i.e. the number of 2 block moves */
+    public int getMoveCount() {
+        return mLinkCount;
+    }
+
+    /**
+     * Find the move that scores the most. Closed loops score every block of their colour. Paths
+     * are found greedily so the path returned is long but not necessarily the longest possible.
+     * @return the best move or null if there are no moves
+     */
+    public Move findBestMove() {
+        if (mLinkCount == 0) {
+            return null;
+        }
+
+        groupBlocks();
+        int loopRoot = findBestLoopRoot();
+        int loopScore = loopRoot >= 0 ? mModel.getColourCount(mModel.getBlock(loopRoot)) : 0;
+        int[] path = walkGroups(loopScore);
+
+        if (loopRoot >= 0 && (path == null || loopScore >= path.length)) {
+            return new Move(findLoop(loopRoot), true, loopScore);
+        }
+        return new Move(path, false, path.length);
+    }
+
+    /**
+     * Find a long path, ignoring any loops on the board. Paths are found greedily as in
+     * {@link #findBestMove()}.
+     * @return the path or null if there are no moves
+     */
+    public Move findLongestPath() {
+        if (mLinkCount == 0) {
+            return null;
+        }
+
+        groupBlocks();
+        int[] path = walkGroups(0);
+        return new Move(path, false, path.length);
+    }
+
+    /**
+     * Find the loop that scores the most.
+     * @return the loop or null if there are no loops on the board
+     */
+    public Move findBestLoop() {
+        if (mLinkCount == 0) {
+            return null;
+        }
+
+        groupBlocks();
+        int root = findBestLoopRoot();
+        if (root < 0) {
+            return null;
+        }
+        return new Move(findLoop(root), true, mModel.getColourCount(mModel.getBlock(root)));
+    }
+
+    /**
+     * Find the group containing the loop that scores the most. A group with at least as many links
+     * as blocks contains a cycle.
+     * @return the root of the group or -1 if no group contains a loop
+     */
+    private int findBestLoopRoot() {
+        int size = mWidth * mHeight;
+        int bestRoot = -1;
+        int bestScore = 0;
+        for (int i = 0; i < size; i++) {
+            if (mParents[i] == i && mGroupSizes[i] >= 2 && mGroupLinks[i] >= mGroupSizes[i]) {
+                int score = mModel.getColourCount(mModel.getBlock(i));
+                if (score > bestScore) {
+                    bestScore = score;
+                    bestRoot = i;
+                }
+            }
+        }
+        return bestRoot;
+    }
+
+    /**
+     * Walk the biggest group, then any others that could contain a longer path.
+     * @return the longest path found or null if no group has more than {@code minLength} blocks
+     */
+    private int[] walkGroups(int minLength) {
+        int size = mWidth * mHeight;
+        int biggestRoot = -1;
+        for (int i = 0; i < size; i++) {
+            if (mParents[i] == i && mGroupSizes[i] >= 2
+                    && (biggestRoot < 0 || mGroupSizes[i] > mGroupSizes[biggestRoot])) {
+                biggestRoot = i;
+            }
+        }
+        if (biggestRoot < 0 || mGroupSizes[biggestRoot] <= minLength) {
+            return null;
+        }
+
+        int[] bestPath = findLongPath(biggestRoot, null);
+        for (int i = 0; i < size; i++) {
+            if (mParents[i] == i && i != biggestRoot && mGroupSizes[i] > bestPath.length
+                    && mGroupSizes[i] > minLength) {
+                bestPath = findLongPath(i, bestPath);
+            }
+        }
+        return bestPath;
+    }
+
+    /**
+     * Partition the blocks into groups of linked blocks, counting the blocks and links of each and
+     * chaining the blocks of each group together so a group can be walked without scanning the
+     * whole board.
+     */
+    private void groupBlocks() {
+        int size = mWidth * mHeight;
+        for (int i = 0; i < size; i++) {
+            mParents[i] = i;
+        }
+        for (int i = mRightLinks.nextSetBit(0); i >= 0; i = mRightLinks.nextSetBit(i + 1)) {
+            union(i, i + 1);
+        }
+        for (int i = mDownLinks.nextSetBit(0); i >= 0; i = mDownLinks.nextSetBit(i + 1)) {
+            union(i, i + mWidth);
+        }
+
+        Arrays.fill(mGroupSizes, 0);
+        Arrays.fill(mGroupLinks, 0);
+        for (int i = 0; i < size; i++) {
+            int root = find(i);
+            mGroupSizes[root]++;
+            if (mRightLinks.get(i)) {
+                mGroupLinks[root]++;
+            }
+            if (mDownLinks.get(i)) {
+                mGroupLinks[root]++;
+            }
+        }
+
+        // Flatten so that mParents[i] == i identifies the root of each group, and chain each group
+        // in ascending index order by adding its blocks to the front from the end of the board
+        Arrays.fill(mGroupHeads, -1);
+        for (int i = size - 1; i >= 0; i--) {
+            int root = find(i);
+            mParents[i] = root;
+            mNextMembers[i] = mGroupHeads[root];
+            mGroupHeads[root] = i;
+        }
+    }
+
+    private int find(int index) {
+        while (mParents[index] != index) {
+            mParents[index] = mParents[mParents[index]];
+            index = mParents[index];
+        }
+        return index;
+    }
+
+    private void union(int a, int b) {
+        int rootA = find(a);
+        int rootB = find(b);
+        if (rootA != rootB) {
+            mParents[rootB] = rootA;
+        }
+    }
+
+    /** Get the neighbour of a block linked to it in direction 0-3, or -1 if there is no link */
+    private int linkedNeighbour(int index, int direction) {
+        switch (direction) {
+            case 0:
+                return mRightLinks.get(index) ? index + 1 : -1;
+            case 1:
+                return mDownLinks.get(index) ? index + mWidth : -1;
+            case 2:
+                return index % mWidth != 0 && mRightLinks.get(index - 1) ? index - 1 : -1;
+            default:
+                return index >= mWidth && mDownLinks.get(index - mWidth) ? index - mWidth : -1;
+        }
+    }
+
+    private int countUnvisitedNeighbours(int index) {
+        int count = 0;
+        for (int d = 0; d < 4; d++) {
+            int next = linkedNeighbour(index, d);
+            if (next >= 0 && mVisited[next] != mVisitStamp) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Greedily walk paths through a group, always stepping to the neighbour with the fewest
+     * onward options. Walks are started from the ends of the group where possible.
+     * @return the longest of the paths walked, or {@code best} if it is at least as long
+     */
+    private int[] findLongPath(int root, int[] best) {
+        int starts = 0;
+        for (int i = mGroupHeads[root]; i >= 0 && starts < MAX_PATH_STARTS; i = mNextMembers[i]) {
+            // Prefer blocks with a single link; always try at least the first block
+            mVisitStamp++;
+            if (starts > 0 && countUnvisitedNeighbours(i) > 1) {
+                continue;
+            }
+            starts++;
+
+            int length = 0;
+            int current = i;
+            while (current >= 0) {
+                mVisited[current] = mVisitStamp;
+                mPath[length++] = current;
+
+                int next = -1;
+                int nextOptions = Integer.MAX_VALUE;
+                for (int d = 0; d < 4; d++) {
+                    int neighbour = linkedNeighbour(current, d);
+                    if (neighbour >= 0 && mVisited[neighbour] != mVisitStamp) {
+                        int options = countUnvisitedNeighbours(neighbour);
+                        if (options < nextOptions) {
+                            next = neighbour;
+                            nextOptions = options;
+                        }
+                    }
+                }
+                current = next;
+            }
+
+            if (best == null || length > best.length) {
+                best = Arrays.copyOf(mPath, length);
+            }
+            if (best.length == mGroupSizes[root]) {
+                break;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Find a closed loop in a group that is known to contain one using a depth first search. The
+     * first link found to a block already on the search stack closes the loop.
+     * @return the blocks of the loop in path order
+     */
+    private int[] findLoop(int root) {
+        mVisitStamp++;
+        int top = 0;
+        mStack[top++] = root;
+        mVisited[root] = mVisitStamp;
+        mNeighbourCursors[root] = 0;
+
+        while (top > 0) {
+            int current = mStack[top - 1];
+            int parent = top > 1 ? mStack[top - 2] : -1;
+            if (mNeighbourCursors[current] == 4) {
+                top--;
+                continue;
+            }
+
+            int next = linkedNeighbour(current, mNeighbourCursors[current]++);
+            if (next < 0 || next == parent) {
+                continue;
+            }
+            if (mVisited[next] != mVisitStamp) {
+                mVisited[next] = mVisitStamp;
+                mNeighbourCursors[next] = 0;
+                mStack[top++] = next;
+            } else {
+                // Back to a block on the stack, the loop runs from there to the current block
+                int start = top - 1;
+                while (mStack[start] != next) {
+                    start--;
+                }
+                return Arrays.copyOfRange(mStack, start, top);
+            }
+        }
+        return null;
+    }
+
+    /** A move on the board */
+    public static class Move {
+        /** The block indices of the move in path order */
+        public final int[] path;
+        /** True if the path should be closed into a loop back to its first block */
+        public final boolean loop;
+        /** The number of blocks the move will remove */
+        public final int score;
+
+        public Move(int[] path, boolean loop, int score) {
+            this.path = path;
+            this.loop = loop;
+            this.score = score;
+        }
+    }
+}
@@ -0,0 +1,8 @@
+package za.jay.blocks.engine;
+
+/**
+ * The power-ups available during a game. {@link #MORE_MOVES} is a time stop in timed games.
+ */
+public enum PowerUp {
+    MORE_MOVES, SHRINKERS, EXPANDERS
+}
@@ -0,0 +1,14 @@
+package za.jay.blocks.engine;
+
+/**
+ * A source of random numbers for generating boards. Implementations don't need to be thread safe
+ * as each {@link GridModel} has its own.
+ */
+public interface RandomSource {
+
+    /** Get a random int in the range [0, bound) */
+    int nextInt(int bound);
+
+    /** Fill {@code count} entries of {@code dest} from {@code offset} with random ints in [0, bound) */
+    void nextInts(int[] dest, int offset, int count, int bound);
+}
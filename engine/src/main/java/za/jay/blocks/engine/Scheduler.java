@@ -0,0 +1,23 @@
+package za.jay.blocks.engine;
+
+/**
+ * Runs tasks at times on its {@link Clock}. Implementations aren't thread safe unless they say
+ * so and run tasks on the thread that uses them.
+ */
+public interface Scheduler extends Clock {
+
+    /**
+     * Run a task once after {@code delayMillis}. Scheduling a task that is already pending runs
+     * it once for each time it was scheduled.
+     */
+    void schedule(Runnable task, long delayMillis);
+
+    /** Cancel every pending run of a task */
+    void cancel(Runnable task);
+
+    /**
+     * Cancel every pending run of a task and forget anything kept to run it again. Call this once
+     * a task will never be scheduled again.
+     */
+    void release(Runnable task);
+}
@@ -0,0 +1,62 @@
+package za.jay.blocks.engine;
+
+/**
+ * A fast, unsynchronized {@link RandomSource} based on the SplitMix64 generator. The same seed
+ * always produces the same sequence of numbers, so boards can be regenerated exactly.
+ */
+public class SplitMixRandom implements RandomSource {
+
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+    private long mState;
+
+    /** Create a generator seeded from the system clock */
+    public SplitMixRandom() {
+        this(mix(System.nanoTime()));
+    }
+
+    public SplitMixRandom(long seed) {
+        mState = seed;
+    }
+
+    /** Get the next 64 random bits */
+    public long nextLong() {
+        mState += GOLDEN_GAMMA;
+        return mix(mState);
+    }
+
+    /**
+     * Get a random int in the range [0, bound) by scaling the top 32 random bits. The bias this
+     * introduces is negligible for the small bounds used for boards.
+     */
+    @Override
+    public int nextInt(int bound) {
+        return (int) (((nextLong() >>> 32) * bound) >>> 32);
+    }
+
+    @Override
+    public void nextInts(int[] dest, int offset, int count, int bound) {
+        long state = mState;
+        for (int i = offset; i < offset + count; i++) {
+            state += GOLDEN_GAMMA;
+            dest[i] = (int) (((mix(state) >>> 32) * bound) >>> 32);
+        }
+        mState = state;
+    }
+
+    /** Get the state of the generator, which {@link #setState(long)} can later restore */
+    public long getState() {
+        return mState;
+    }
+
+    /** Restore a state from {@link #getState()} so the sequence continues where it left off */
+    public void setState(long state) {
+        mState = state;
+    }
+
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,111 @@
+package za.jay.blocks.engine;
+
+import java.util.Iterator;
+import java.util.PriorityQueue;
+
+/**
+ * A {@link Scheduler} whose time only moves when it is told to. Advancing it runs every task that
+ * falls due on the way, in order of due time and then of scheduling, with the clock set to each
+ * task's due time as it runs. Tasks scheduled by other tasks run in the same advance if they fall
+ * due within it, so whole games can be played in no real time at all.
+ */
+public class VirtualScheduler implements Scheduler {
+
+    private final PriorityQueue<Entry> mQueue = new PriorityQueue<Entry>();
+    private long mNow;
+    private long mSequence;
+
+    public VirtualScheduler() {
+        this(0);
+    }
+
+    /** Create a scheduler whose clock starts at {@code now} */
+    public VirtualScheduler(long now) {
+        mNow = now;
+    }
+
+    @Override
+    public long now() {
+        return mNow;
+    }
+
+    @Override
+    public void schedule(Runnable task, long delayMillis) {
+        mQueue.add(new Entry(mNow + Math.max(0, delayMillis), mSequence++, task));
+    }
+
+    @Override
+    public void cancel(Runnable task) {
+        Iterator<Entry> it = mQueue.iterator();
+        while (it.hasNext()) {
+            if (it.next().mTask == task) {
+                it.remove();
+            }
+        }
+    }
+
+    @Override
+    public void release(Runnable task) {
+        cancel(task);
+    }
+
+    /** Move the clock forward by {@code millis}, running every task that falls due */
+    public void advanceBy(long millis) {
+        advanceTo(mNow + millis);
+    }
+
+    /** Move the clock forward to {@code time}, running every task that falls due */
+    public void advanceTo(long time) {
+        while (!mQueue.isEmpty() && mQueue.peek().mTime <= time) {
+            Entry entry = mQueue.poll();
+            mNow = Math.max(mNow, entry.mTime);
+            entry.mTask.run();
+        }
+        mNow = Math.max(mNow, time);
+    }
+
+    /**
+     * Move the clock forward to the next pending task and run it.
+     * @return false if there were no tasks pending
+     */
+    public boolean runNext() {
+        Entry entry = mQueue.poll();
+        if (entry == null) {
+            return false;
+        }
+        mNow = Math.max(mNow, entry.mTime);
+        entry.mTask.run();
+        return true;
+    }
+
+    /** Get the number of task runs waiting to fall due */
+    public int getPendingCount() {
+        return mQueue.size();
+    }
+
+    /** Drop every pending task and set the clock back to {@code now} */
+    public void reset(long now) {
+        mQueue.clear();
+        mNow = now;
+    }
+
+    private static class Entry implements Comparable<Entry> {
+        final long mTime;
+        final long mSequence;
+        final Runnable mTask;
+
+        Entry(long time, long sequence, Runnable task) {
+            mTime = time;
+            mSequence = sequence;
+            mTask = task;
+        }
+
+        @Override
+        public int compareTo(Entry other) {
+            if (mTime != other.mTime) {
+                return mTime < other.mTime ? -1 : 1;
+            }
+            return mSequence < other.mSequence ? -1 : (mSequence == other.mSequence ? 0 : 1);
+        }
+    }
+}
@@ -0,0 +1,342 @@
+package za.jay.blocks.engine;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs {@link Countdown}s on a {@link VirtualScheduler}, so a whole timed game takes no real time.
+ */
+public class CountdownTest {
+
+    private final VirtualScheduler mScheduler = new VirtualScheduler();
+    /** The time of each tick and the remaining time it gave, in pairs */
+    private final List<Long> mTicks = new ArrayList<Long>();
+
+    @Test
+    public void ticksOncePerSecondUntilZero() {
+        Countdown countdown = newCountdown(GameSession.TIME_LIMIT);
+        countdown.play();
+        mScheduler.advanceBy(2 * GameSession.TIME_LIMIT);
+
+        // 60 down to 0 seconds, each tick on the second
+        assertEquals(2 * 61, mTicks.size());
+        for (int i = 0; i <= 60; i++) {
+            assertEquals(i * 1000L, (long) mTicks.get(2 * i));
+            assertEquals(GameSession.TIME_LIMIT - i * 1000L, (long) mTicks.get(2 * i + 1));
+        }
+        assertFalse(countdown.isPlaying());
+        assertEquals(0, countdown.getRemaining());
+        assertEquals(0, mScheduler.getPendingCount());
+    }
+
+    @Test
+    public void nothingIsScheduledBetweenTicks() {
+        Countdown countdown = newCountdown(10000);
+        countdown.play();
+        mScheduler.advanceBy(2500);
+        assertEquals(1, mScheduler.getPendingCount());
+        assertEquals(7500, countdown.getRemaining());
+    }
+
+    @Test
+    public void resolutionSetsTheTickRate() {
+        Countdown countdown = new Countdown(1000, 100, mScheduler);
+        final int[] ticks = new int[1];
+        countdown.setListener(new Countdown.Listener() {
+            @Override
+            public void onCountdownTick(long remaining) {
+                ticks[0]++;
+            }
+        });
+        countdown.play();
+        mScheduler.advanceBy(1000);
+        assertEquals(11, ticks[0]);
+    }
+
+    @Test
+    public void pauseStopsTheClock() {
+        Countdown countdown = newCountdown(10000);
+        countdown.play();
+        mScheduler.advanceBy(3000);
+        countdown.pause();
+        assertFalse(countdown.isPlaying());
+        mScheduler.advanceBy(60000);
+        assertEquals(7000, countdown.getRemaining());
+        assertEquals(0, mScheduler.getPendingCount());
+    }
+
+    @Test
+    public void freezeStopsTheClockForItsDuration() {
+        Countdown countdown = newCountdown(10000);
+        countdown.play();
+        mScheduler.advanceBy(1000);
+        countdown.freeze(5000);
+        assertTrue(countdown.isFrozen());
+        mScheduler.advanceBy(5000);
+        assertFalse(countdown.isFrozen());
+        assertEquals(9000, countdown.getRemaining());
+
+        mScheduler.advanceBy(100000);
+        assertEquals(0, countdown.getRemaining());
+        // The last tick came at the deadline pushed back by the freeze
+        assertEquals(15000L, (long) mTicks.get(mTicks.size() - 2));
+    }
+
+    @Test
+    public void releaseStopsTheCountdownForGood() {
+        final List<Runnable> released = new ArrayList<Runnable>();
+        VirtualScheduler scheduler = new VirtualScheduler() {
+            @Override
+            public void release(Runnable task) {
+                released.add(task);
+                super.release(task);
+            }
+        };
+        Countdown countdown = new Countdown(10000, scheduler);
+        countdown.play();
+        scheduler.advanceBy(1000);
+        countdown.release();
+
+        assertEquals(1, released.size());
+        assertFalse(countdown.isPlaying());
+        assertEquals(0, countdown.getRemaining());
+        assertEquals(0, scheduler.getPendingCount());
+        countdown.play();
+        assertFalse(countdown.isPlaying());
+        assertEquals(0, scheduler.getPendingCount());
+    }
+
+    @Test
+    public void finishingReleasesTheUpdateTask() {
+        final List<Runnable> released = new ArrayList<Runnable>();
+        VirtualScheduler scheduler = new VirtualScheduler() {
+            @Override
+            public void release(Runnable task) {
+                released.add(task);
+                super.release(task);
+            }
+        };
+        Countdown countdown = new Countdown(3000, scheduler);
+        countdown.play();
+        scheduler.advanceBy(2000);
+        countdown.pause();
+        countdown.play();
+        assertTrue(released.isEmpty());
+
+        scheduler.advanceBy(5000);
+        assertEquals(1, released.size());
+        assertEquals(0, scheduler.getPendingCount());
+    }
+
+    @Test
+    public void freezeRemainingIsReportedWhilePlayingAndPaused() {
+        Countdown countdown = newCountdown(10000);
+        assertEquals(0, countdown.getFreezeRemaining());
+        countdown.play();
+        countdown.freeze(5000);
+        mScheduler.advanceBy(2000);
+        assertEquals(3000, countdown.getFreezeRemaining());
+        countdown.pause();
+        mScheduler.advanceBy(10000);
+        assertEquals(3000, countdown.getFreezeRemaining());
+        countdown.play();
+        mScheduler.advanceBy(4000);
+        assertEquals(0, countdown.getFreezeRemaining());
+    }
+
+    @Test
+    public void restoredCountdownKeepsItsFreeze() {
+        Countdown original = newCountdown(GameSession.TIME_LIMIT);
+        original.play();
+        mScheduler.advanceBy(20000);
+        original.freeze(GameSession.TIME_STOP_DURATION);
+        mScheduler.advanceBy(2000);
+
+        // Save it as GameFragment does, then carry on with a new countdown from the snapshot
+        GameSession session = new GameSession(GameMode.TIMED, 6, 6, GameReplayerTest.COLOURS, 8);
+        GameSnapshot snapshot = GameSnapshot.read(GameSnapshot.save(session,
+                original.getRemaining(), original.getFreezeRemaining(), null));
+        original.pause();
+        assertEquals(40000, snapshot.getTimeRemaining());
+        assertEquals(3000, snapshot.getFreezeRemaining());
+
+        Countdown restored = newCountdown(snapshot.getTimeRemaining());
+        restored.freeze(snapshot.getFreezeRemaining());
+        long restoredAt = mScheduler.now();
+        restored.play();
+        assertTrue(restored.isFrozen());
+        mScheduler.advanceBy(100000);
+
+        // Still 3 s of freeze and 40 s of play left when restored
+        assertEquals(restoredAt + 43000, (long) mTicks.get(mTicks.size() - 2));
+        assertEquals(0L, (long) mTicks.get(mTicks.size() - 1));
+    }
+
+    @Test
+    public void overlappingFreezesStack() {
+        Countdown countdown = newCountdown(10000);
+        countdown.play();
+        mScheduler.advanceBy(1000);
+        countdown.freeze(5000);
+        mScheduler.advanceBy(2000);
+        // The second time stop starts when the first would have ended
+        countdown.freeze(5000);
+        assertEquals(8000, countdown.getFreezeRemaining());
+
+        mScheduler.advanceBy(7999);
+        assertTrue(countdown.isFrozen());
+        assertEquals(9000, countdown.getRemaining());
+        mScheduler.advanceBy(1);
+        assertFalse(countdown.isFrozen());
+        mScheduler.advanceBy(100000);
+        assertEquals(20000L, lastTickTime());
+    }
+
+    @Test
+    public void freezesMadeWhilePausedNest() {
+        Countdown countdown = newCountdown(10000);
+        countdown.play();
+        mScheduler.advanceBy(1000);
+        countdown.freeze(2000);
+        countdown.pause();
+        countdown.freeze(3000);
+        assertEquals(5000, countdown.getFreezeRemaining());
+        mScheduler.advanceBy(60000);
+
+        countdown.play();
+        long resumedAt = mScheduler.now();
+        mScheduler.advanceBy(4999);
+        assertEquals(9000, countdown.getRemaining());
+        mScheduler.advanceBy(100000);
+        assertEquals(resumedAt + 5000 + 9000, lastTickTime());
+    }
+
+    @Test
+    public void cancelFreezeRestartsTheClock() {
+        Countdown countdown = newCountdown(10000);
+        countdown.play();
+        countdown.freeze(5000);
+        countdown.freeze(5000);
+        mScheduler.advanceBy(3000);
+        countdown.cancelFreeze();
+        assertFalse(countdown.isFrozen());
+        assertEquals(0, countdown.getFreezeRemaining());
+        mScheduler.advanceBy(1000);
+        assertEquals(9000, countdown.getRemaining());
+        mScheduler.advanceBy(100000);
+        assertEquals(13000L, lastTickTime());
+
+        // Cancelling while paused drops the paused freeze
+        Countdown paused = newCountdown(10000);
+        paused.freeze(5000);
+        paused.cancelFreeze();
+        assertFalse(paused.isFrozen());
+    }
+
+    @Test
+    public void remainingTimeSurvivesPauseAndResume() {
+        Countdown countdown = newCountdown(GameSession.TIME_LIMIT);
+        countdown.play();
+        long played = 0;
+        Random random = new Random(4);
+        for (int i = 0; i < 50; i++) {
+            long step = random.nextInt(700);
+            mScheduler.advanceBy(step);
+            played += step;
+            countdown.pause();
+            assertEquals(GameSession.TIME_LIMIT - played, countdown.getRemaining());
+            mScheduler.advanceBy(random.nextInt(5000));
+            assertEquals(GameSession.TIME_LIMIT - played, countdown.getRemaining());
+            countdown.play();
+        }
+        long resumedAt = mScheduler.now();
+        mScheduler.advanceBy(2 * GameSession.TIME_LIMIT);
+        assertEquals(resumedAt + GameSession.TIME_LIMIT - played, lastTickTime());
+    }
+
+    @Test
+    public void lateUpdatesDontDrift() {
+        // Every update runs most of a frame after it was due
+        final VirtualScheduler late = new VirtualScheduler() {
+            @Override
+            public void schedule(Runnable task, long delayMillis) {
+                super.schedule(task, delayMillis + 15);
+            }
+        };
+        Countdown countdown = new Countdown(10000, late);
+        final long[] endTime = { -1 };
+        countdown.setListener(new Countdown.Listener() {
+            @Override
+            public void onCountdownTick(long remaining) {
+                if (remaining == 0) {
+                    endTime[0] = late.now();
+                }
+            }
+        });
+        countdown.play();
+        for (long time = 0; time < 10000; time += 333) {
+            late.advanceTo(time);
+            assertEquals(10000 - time, countdown.getRemaining());
+        }
+        late.advanceBy(1000);
+        assertEquals(0, countdown.getRemaining());
+        assertFalse(countdown.isPlaying());
+        assertTrue("Ended at " + endTime[0], endTime[0] >= 10000 && endTime[0] <= 10015);
+    }
+
+    @Test
+    public void timedSessionEndsAtExactlySixtySeconds() {
+        Random random = new Random(1);
+        for (int game = 0; game < 1000; game++) {
+            mScheduler.reset(0);
+            mTicks.clear();
+            final GameSession session = new GameSession(GameMode.TIMED, 6, 6,
+                    GameReplayerTest.COLOURS, random.nextLong());
+            final long[] endTime = { -1 };
+            Countdown countdown = new Countdown(GameSession.TIME_LIMIT, mScheduler);
+            countdown.setListener(new Countdown.Listener() {
+                @Override
+                public void onCountdownTick(long remaining) {
+                    if (remaining == 0) {
+                        endTime[0] = mScheduler.now();
+                        session.finish();
+                    }
+                }
+            });
+            countdown.play();
+
+            while (!session.isOver()) {
+                GameReplayerTest.playMove(session, random);
+                mScheduler.advanceBy(300 + random.nextInt(1000));
+            }
+
+            assertEquals(GameSession.TIME_LIMIT, endTime[0]);
+            assertEquals(0, countdown.getRemaining());
+            assertEquals(0, mScheduler.getPendingCount());
+        }
+    }
+
+    /** Get the time of the last tick */
+    private long lastTickTime() {
+        return mTicks.get(mTicks.size() - 2);
+    }
+
+    private Countdown newCountdown(long length) {
+        Countdown countdown = new Countdown(length, mScheduler);
+        countdown.setListener(new Countdown.Listener() {
+            @Override
+            public void onCountdownTick(long remaining) {
+                mTicks.add(mScheduler.now());
+                mTicks.add(remaining);
+            }
+        });
+        return countdown;
+    }
+}
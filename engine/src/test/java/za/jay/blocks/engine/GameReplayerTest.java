@@ -0,0 +1,132 @@
+package za.jay.blocks.engine;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Plays seeded games with a mix of paths, loops, power-ups and double taps, then checks that
+ * replaying their recordings ends in the same state.
+ */
+public class GameReplayerTest {
+
+    static final int[] COLOURS = { 0xff0000, 0x00ff00, 0x0000ff, 0xffff00, 0xff00ff };
+    private static final int GAMES = 60;
+    static final int MAX_MOVES = 60;
+
+    @Test
+    public void replayMatchesGame() {
+        Random random = new Random(1);
+        for (int game = 0; game < GAMES; game++) {
+            GameSession session = newSession(random, game);
+            GameRecorder recorder = record(session);
+
+            Random moves = new Random(game);
+            for (int move = 0; move < MAX_MOVES && !session.isOver(); move++) {
+                if (!playMove(session, moves)) {
+                    break;
+                }
+            }
+            if (!session.isOver()) {
+                session.finish();
+            }
+
+            assertSameGame(session, GameReplayer.replay(recorder.toByteArray()));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void truncatedHeaderIsRejected() {
+        GameSession session = new GameSession(GameMode.MOVES, 6, 6, COLOURS, 3);
+        byte[] log = record(session).toByteArray();
+        byte[] truncated = new byte[5];
+        System.arraycopy(log, 0, truncated, 0, truncated.length);
+        GameReplayer.replay(truncated);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void otherDataIsRejected() {
+        GameReplayer.replay(new byte[] { 1, 2, 3, 4 });
+    }
+
+    static GameSession newSession(Random random, int game) {
+        GameMode mode = GameMode.values()[game % GameMode.values().length];
+        int width = 4 + random.nextInt(6);
+        int height = 4 + random.nextInt(6);
+        return new GameSession(mode, width, height, COLOURS, random.nextLong());
+    }
+
+    static GameRecorder record(GameSession session) {
+        GridModel model = session.getModel();
+        GameRecorder recorder = new GameRecorder(session.getSeed(), session.getMode(),
+                model.getWidth(), model.getHeight(), COLOURS.length);
+        session.setRecorder(recorder);
+        return recorder;
+    }
+
+    /**
+     * Make a move chosen by {@code random}, mostly the hinted move.
+     * @return false if there was no move to make
+     */
+    static boolean playMove(GameSession session, Random random) {
+        GridModel model = session.getModel();
+        int size = model.getWidth() * model.getHeight();
+        switch (random.nextInt(16)) {
+            case 0:
+                session.usePowerUp(PowerUp.SHRINKERS);
+                session.tap(random.nextInt(size));
+                return true;
+            case 1:
+                session.usePowerUp(PowerUp.EXPANDERS);
+                session.tap(random.nextInt(size));
+                return true;
+            case 2:
+                session.doubleTap(random.nextInt(size));
+                return true;
+            case 3:
+                session.usePowerUp(PowerUp.MORE_MOVES);
+                return true;
+            default:
+                MoveAnalyzer.Move move = session.findHint();
+                if (move == null) {
+                    return false;
+                }
+                session.beginPath(move.path[0]);
+                for (int i = 1; i < move.path.length; i++) {
+                    session.extendPath(move.path[i]);
+                }
+                if (move.loop) {
+                    session.extendPath(move.path[0]);
+                }
+                session.endPath();
+                return true;
+        }
+    }
+
+    static void assertSameGame(GameSession expected, GameSession actual) {
+        assertEquals(expected.getScore(), actual.getScore());
+        assertEquals(expected.getMoves(), actual.getMoves());
+        assertEquals(expected.isOver(), actual.isOver());
+        assertEquals(expected.getActivePowerUp(), actual.getActivePowerUp());
+        assertArrayEquals(getColourIndices(expected.getModel()),
+                getColourIndices(actual.getModel()));
+    }
+
+    /** Get the board as positions in the palette, as replays have no real colours */
+    private static int[] getColourIndices(GridModel model) {
+        int[] indices = new int[model.getWidth() * model.getHeight()];
+        for (int i = 0; i < indices.length; i++) {
+            int block = model.getBlock(i);
+            indices[i] = block;
+            for (int c = 0; c < COLOURS.length; c++) {
+                if (COLOURS[c] == block) {
+                    indices[i] = c;
+                }
+            }
+        }
+        return indices;
+    }
+}
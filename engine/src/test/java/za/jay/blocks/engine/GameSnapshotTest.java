@@ -0,0 +1,168 @@
+package za.jay.blocks.engine;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+import static za.jay.blocks.engine.GameReplayerTest.COLOURS;
+import static za.jay.blocks.engine.GameReplayerTest.MAX_MOVES;
+import static za.jay.blocks.engine.GameReplayerTest.assertSameGame;
+import static za.jay.blocks.engine.GameReplayerTest.newSession;
+import static za.jay.blocks.engine.GameReplayerTest.playMove;
+import static za.jay.blocks.engine.GameReplayerTest.record;
+
+/**
+ * Saves games to a {@link GameSnapshot} part way through and checks that the restored games
+ * carry on exactly as the originals do.
+ */
+public class GameSnapshotTest {
+
+    private static final int GAMES = 60;
+    /** Where the blocks start in a snapshot */
+    private static final int GRID_OFFSET = 5 + 3 * 4 + 2 * 8 + 3 * 4 + 2 * 8;
+
+    @Test
+    public void restoredGameCarriesOnIdentically() {
+        Random random = new Random(2);
+        for (int game = 0; game < GAMES; game++) {
+            GameSession session = newSession(random, game);
+            GameRecorder recorder = record(session);
+
+            Random moves = new Random(game);
+            int saveAt = moves.nextInt(MAX_MOVES / 2);
+            for (int move = 0; move < saveAt && !session.isOver(); move++) {
+                playMove(session, moves);
+            }
+
+            GameSnapshot snapshot = GameSnapshot.read(
+                    GameSnapshot.save(session, 1234, 567, recorder));
+            assertEquals(session.getMode(), snapshot.getMode());
+            assertEquals(session.getModel().getWidth(), snapshot.getWidth());
+            assertEquals(session.getModel().getHeight(), snapshot.getHeight());
+            assertEquals(1234, snapshot.getTimeRemaining());
+            assertEquals(567, snapshot.getFreezeRemaining());
+            GameSession restored = snapshot.createSession(COLOURS);
+            GameRecorder restoredRecorder = snapshot.createRecorder();
+            restored.setRecorder(restoredRecorder);
+            assertSameGame(session, restored);
+            assertEquals(session.getMovesMade(), restored.getMovesMade());
+
+            // Both games are given the same moves from here on
+            long seed = moves.nextLong();
+            Random originalMoves = new Random(seed);
+            Random restoredMoves = new Random(seed);
+            for (int move = saveAt; move < MAX_MOVES && !session.isOver(); move++) {
+                boolean played = playMove(session, originalMoves);
+                assertEquals(played, playMove(restored, restoredMoves));
+                assertSameGame(session, restored);
+                if (!played) {
+                    break;
+                }
+            }
+            if (!session.isOver()) {
+                session.finish();
+                restored.finish();
+            }
+
+            assertSameGame(session, restored);
+            assertSameGame(session, GameReplayer.replay(restoredRecorder.toByteArray()));
+        }
+    }
+
+    @Test
+    public void gameWithoutRecordingRestoresWithoutOne() {
+        GameSession session = new GameSession(GameMode.MOVES, 6, 6, COLOURS, 4);
+        playMove(session, new Random(4));
+        GameSnapshot snapshot = GameSnapshot.read(GameSnapshot.save(session, 0, 0, null));
+        assertNull(snapshot.createRecorder());
+        assertSameGame(session, snapshot.createSession(COLOURS));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void otherDataIsRejected() {
+        GameSnapshot.read(new byte[64]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void differentPaletteIsRejected() {
+        GameSession session = new GameSession(GameMode.MOVES, 6, 6, COLOURS, 5);
+        GameSnapshot.read(GameSnapshot.save(session, 0, 0, null))
+                .createSession(new int[] { 1, 2 });
+    }
+
+    @Test
+    public void everyTruncationIsRejected() {
+        byte[] data = saveSampleGame();
+        for (int length = 0; length < data.length; length++) {
+            byte[] truncated = new byte[length];
+            System.arraycopy(data, 0, truncated, 0, length);
+            assertRejected("Cut to " + length + " bytes", truncated);
+        }
+        assertRejected("Null", null);
+    }
+
+    @Test
+    public void extraBytesAreRejected() {
+        byte[] data = saveSampleGame();
+        byte[] longer = new byte[data.length + 1];
+        System.arraycopy(data, 0, longer, 0, data.length);
+        assertRejected("One byte too long", longer);
+    }
+
+    @Test
+    public void badFieldsAreRejected() {
+        assertRejected("Version", corrupt(1, GameSnapshot.VERSION + 1));
+        assertRejected("Mode", corrupt(2, GameMode.values().length));
+        assertRejected("Power-up", corrupt(4, PowerUp.values().length + 1));
+        assertRejected("Width", corrupt(5, 0x80));
+        assertRejected("Height", corrupt(12, 0));
+        assertRejected("Palette size", corrupt(15, 1));
+        assertRejected("Block colour", corrupt(GRID_OFFSET, COLOURS.length));
+    }
+
+    @Test
+    public void randomCorruptionOnlyEverThrowsIllegalArgument() {
+        byte[] data = saveSampleGame();
+        Random random = new Random(6);
+        for (int i = 0; i < 20000; i++) {
+            byte[] corrupt = data.clone();
+            corrupt[random.nextInt(corrupt.length)] = (byte) random.nextInt(256);
+            try {
+                GameSnapshot snapshot = GameSnapshot.read(corrupt);
+                snapshot.createSession(COLOURS);
+                snapshot.createRecorder();
+            } catch (IllegalArgumentException e) {
+                // Expected for most corruptions
+            }
+        }
+    }
+
+    /** Save a game a few moves in with a recording */
+    private static byte[] saveSampleGame() {
+        GameSession session = new GameSession(GameMode.TIMED, 6, 6, COLOURS, 7);
+        GameRecorder recorder = record(session);
+        Random moves = new Random(7);
+        for (int move = 0; move < 5; move++) {
+            playMove(session, moves);
+        }
+        return GameSnapshot.save(session, 30000, 2000, recorder);
+    }
+
+    private static byte[] corrupt(int offset, int value) {
+        byte[] data = saveSampleGame();
+        data[offset] = (byte) value;
+        return data;
+    }
+
+    private static void assertRejected(String message, byte[] data) {
+        try {
+            GameSnapshot.read(data);
+            fail(message + " was read");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+}
@@ -0,0 +1,306 @@
+package za.jay.blocks.engine;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the single pass compaction of {@link GridModel} against a naive compaction done on a
+ * copy of the board: in each column the blocks that are left keep their order and settle at the
+ * bottom, and the rows above them are refilled from the palette. Also checks that the colour
+ * bitboards always agree with the grid.
+ */
+public class GridModelTest {
+
+    private static final int[] COLOURS = { 0xff0000, 0x00ff00, 0x0000ff, 0xffff00, 0xff00ff };
+    private static final int MOVES = 200;
+
+    @Test
+    public void removePathMatchesNaiveCompaction() {
+        checkRemovePath(6, 6, false, 1);
+        checkRemovePath(1, 8, false, 2);
+        checkRemovePath(8, 1, true, 3);
+        checkRemovePath(13, 7, true, 4);
+    }
+
+    @Test
+    public void removeColorMatchesNaiveCompaction() {
+        checkRemoveColor(false);
+        checkRemoveColor(true);
+    }
+
+    @Test
+    public void colourBoardsMatchTheGrid() {
+        Random random = new Random(6);
+        GridModel model = newModel(9, 11, true);
+        assertColourBoardsMatch(model);
+        for (int move = 0; move < MOVES; move++) {
+            if (move % 3 == 0) {
+                model.removeColor(COLOURS[random.nextInt(COLOURS.length)]);
+            } else if (move % 3 == 1) {
+                model.removeBlock(random.nextInt(model.getWidth() * model.getHeight()));
+            } else {
+                model.removePath(toList(randomPath(random, model)));
+            }
+            assertColourBoardsMatch(model);
+        }
+    }
+
+    @Test
+    public void colourQueriesMatchWithAndWithoutBitboards() {
+        Random random = new Random(7);
+        GridModel model = newModel(9, 7, true);
+        for (int move = 0; move < MOVES; move++) {
+            model.removePath(toList(randomPath(random, model)));
+            for (int colour : COLOURS) {
+                int count = 0;
+                boolean pair = false;
+                for (int i = 0; i < model.getWidth() * model.getHeight(); i++) {
+                    if (model.getBlock(i) != colour) {
+                        continue;
+                    }
+                    count++;
+                    int col = i % model.getWidth();
+                    if ((col < model.getWidth() - 1 && model.getBlock(i + 1) == colour)
+                            || (i + model.getWidth() < model.getWidth() * model.getHeight()
+                            && model.getBlock(i + model.getWidth()) == colour)) {
+                        pair = true;
+                    }
+                }
+                assertEquals(count, model.getColourCount(colour));
+                assertEquals(pair, model.hasAdjacentPair(colour));
+            }
+        }
+    }
+
+    private static void checkRemoveColor(boolean useBitboards) {
+        GridModel model = newModel(7, 9, useBitboards);
+        for (int move = 0; move < MOVES; move++) {
+            int colour = COLOURS[move % COLOURS.length];
+            int[] before = getBlocks(model);
+            boolean[] removed = new boolean[before.length];
+            int count = 0;
+            for (int i = 0; i < before.length; i++) {
+                if (before[i] == colour) {
+                    removed[i] = true;
+                    count++;
+                }
+            }
+
+            assertEquals(count, model.removeColor(colour));
+            assertCompacted(model, before, removed);
+        }
+    }
+
+    @Test
+    public void sameSeedGivesSameBoards() {
+        Random random = new Random(8);
+        GridModel a = new GridModel(7, 5, COLOURS, true, new SplitMixRandom(8));
+        GridModel b = new GridModel(7, 5, COLOURS, false, new SplitMixRandom(8));
+        assertArrayEquals(getBlocks(a), getBlocks(b));
+        for (int move = 0; move < MOVES; move++) {
+            List<Integer> path = toList(randomPath(random, a));
+            a.removePath(path);
+            b.removePath(path);
+            assertArrayEquals(getBlocks(a), getBlocks(b));
+        }
+    }
+
+    @Test
+    public void refillMatchesRemovingBlocksColumnByColumn() {
+        Random random = new Random(9);
+        GridModel model = new GridModel(6, 8, COLOURS, true, new SplitMixRandom(9));
+        GridModel naive = new GridModel(6, 8, COLOURS, false, new SplitMixRandom(9));
+        for (int move = 0; move < MOVES; move++) {
+            int[] path = randomPath(random, model);
+            model.removePath(toList(path));
+
+            // Colours are drawn column by column, each column from the top down
+            int[] sorted = new int[path.length];
+            int size = naive.getWidth() * naive.getHeight();
+            for (int i = 0; i < path.length; i++) {
+                sorted[i] = (path[i] % naive.getWidth()) * size + path[i];
+            }
+            Arrays.sort(sorted);
+            for (int key : sorted) {
+                naive.removeBlock(key % size);
+            }
+            assertArrayEquals(getBlocks(naive), getBlocks(model));
+        }
+    }
+
+    @Test
+    public void eachOperationIsTimed() {
+        final int[] timed = new int[GridModel.Operation.values().length];
+        GridModel model = newModel(6, 6, true);
+        model.setOperationTimer(new GridModel.OperationTimer() {
+            @Override
+            public void onOperationTimed(GridModel.Operation operation, long nanos) {
+                assertTrue(nanos >= 0);
+                timed[operation.ordinal()]++;
+            }
+        });
+
+        model.fillGrid();
+        model.removeBlock(0);
+        model.removePath(Arrays.asList(1, 2));
+        model.removePath(new int[] { 3, 4, 5 }, 3);
+        model.removeColor(COLOURS[0]);
+        model.shuffle();
+        assertArrayEquals(new int[] { 1, 1, 2, 1, 1 }, timed);
+
+        model.setOperationTimer(null);
+        model.removeBlock(0);
+        assertEquals(1, timed[GridModel.Operation.REMOVE_BLOCK.ordinal()]);
+    }
+
+    @Test
+    public void removePathLeavesThePathAlone() {
+        GridModel model = newModel(6, 6, true);
+        List<Integer> path = new ArrayList<Integer>(Arrays.asList(30, 6, 18, 0));
+        assertEquals(4, model.removePath(path));
+        assertEquals(Arrays.asList(30, 6, 18, 0), path);
+    }
+
+    @Test
+    public void changesAreReportedFromTheTopOfEachColumn() {
+        final GridModel model = newModel(8, 8, true);
+        final int[][] depths = new int[1][];
+        model.setGridBatchChangeListener(new GridModel.GridBatchChangeListener() {
+            @Override
+            public void onBlocksChanged(int[] dirtyDepths) {
+                depths[0] = dirtyDepths.clone();
+            }
+        });
+
+        Random random = new Random(5);
+        for (int move = 0; move < MOVES; move++) {
+            int[] before = getBlocks(model);
+            depths[0] = new int[model.getWidth()];
+            model.removePath(toList(randomPath(random, model)));
+
+            int[] after = getBlocks(model);
+            for (int i = 0; i < after.length; i++) {
+                if (after[i] != before[i]) {
+                    assertTrue("Block " + i + " changed below its column's dirty depth",
+                            i / model.getWidth() < depths[0][i % model.getWidth()]);
+                }
+            }
+        }
+    }
+
+    private static void checkRemovePath(int width, int height, boolean useBitboards,
+            long seed) {
+        Random random = new Random(seed);
+        GridModel model = newModel(width, height, useBitboards);
+        for (int move = 0; move < MOVES; move++) {
+            int[] path = randomPath(random, model);
+            int[] before = getBlocks(model);
+            boolean[] removed = new boolean[before.length];
+            for (int index : path) {
+                removed[index] = true;
+            }
+
+            assertEquals(path.length, model.removePath(toList(path)));
+            assertCompacted(model, before, removed);
+        }
+    }
+
+    private static GridModel newModel(int width, int height, boolean useBitboards) {
+        return new GridModel(width, height, COLOURS, useBitboards,
+                new SplitMixRandom(width * 31 + height));
+    }
+
+    private static void assertColourBoardsMatch(GridModel model) {
+        for (int colour : COLOURS) {
+            Bitboard board = model.getColourBoard(colour);
+            assertNotNull(board);
+            int count = 0;
+            for (int i = 0; i < model.getWidth() * model.getHeight(); i++) {
+                boolean expected = model.getBlock(i) == colour;
+                assertEquals("Block " + i + " of colour " + colour, expected, board.get(i));
+                if (expected) {
+                    count++;
+                }
+            }
+            assertEquals(count, board.cardinality());
+        }
+    }
+
+    /** Check the board is {@code before} with the {@code removed} blocks compacted out */
+    private static void assertCompacted(GridModel model, int[] before, boolean[] removed) {
+        int width = model.getWidth();
+        int height = model.getHeight();
+        for (int col = 0; col < width; col++) {
+            // Naively collect the blocks left in the column, bottom up
+            int[] left = new int[height];
+            int count = 0;
+            for (int row = height - 1; row >= 0; row--) {
+                int index = col + row * width;
+                if (!removed[index]) {
+                    left[count++] = before[index];
+                }
+            }
+
+            for (int i = 0; i < count; i++) {
+                int index = col + (height - 1 - i) * width;
+                assertEquals("Block " + index, left[i], model.getBlock(index));
+            }
+            for (int row = 0; row < height - count; row++) {
+                int index = col + row * width;
+                assertTrue("Block " + index + " isn't a palette colour",
+                        isPaletteColour(model.getBlock(index)));
+            }
+        }
+    }
+
+    private static boolean isPaletteColour(int colour) {
+        for (int c : COLOURS) {
+            if (c == colour) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Pick a set of distinct blocks in no particular order */
+    private static int[] randomPath(Random random, GridModel model) {
+        int size = model.getWidth() * model.getHeight();
+        int[] indices = new int[size];
+        for (int i = 0; i < size; i++) {
+            indices[i] = i;
+        }
+        int length = 1 + random.nextInt(Math.min(size, 12));
+        for (int i = 0; i < length; i++) {
+            int j = i + random.nextInt(size - i);
+            int swap = indices[i];
+            indices[i] = indices[j];
+            indices[j] = swap;
+        }
+        return Arrays.copyOf(indices, length);
+    }
+
+    private static List<Integer> toList(int[] indices) {
+        List<Integer> list = new ArrayList<Integer>(indices.length);
+        for (int index : indices) {
+            list.add(index);
+        }
+        return list;
+    }
+
+    private static int[] getBlocks(GridModel model) {
+        int[] blocks = new int[model.getWidth() * model.getHeight()];
+        for (int i = 0; i < blocks.length; i++) {
+            blocks[i] = model.getBlock(i);
+        }
+        return blocks;
+    }
+}
@@ -0,0 +1,131 @@
+package za.jay.blocks.engine;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class HistogramTest {
+
+    @Test
+    public void emptyHistogramReportsZeros() {
+        Histogram histogram = new Histogram(1000);
+        assertEquals(0, histogram.getTotalCount());
+        assertEquals(0, histogram.getMin());
+        assertEquals(0, histogram.getMax());
+        assertEquals(0, histogram.getMean(), 0);
+        assertEquals(0, histogram.getValueAtPercentile(50));
+    }
+
+    @Test
+    public void smallValuesAreExact() {
+        Histogram histogram = new Histogram(1000);
+        for (int value = 0; value < 128; value++) {
+            histogram.record(value);
+        }
+        for (int value = 0; value < 128; value++) {
+            // value + 1 of the 128 values are at or below value
+            double percentile = (value + 1) * 100.0 / 128;
+            assertEquals(value, histogram.getValueAtPercentile(percentile));
+        }
+    }
+
+    @Test
+    public void bucketBoundaries() {
+        // 127 is the last exact value, then buckets are 2 wide up to 255 and 4 wide up to 511
+        assertBucketHighest(127, 127);
+        assertBucketHighest(128, 129);
+        assertBucketHighest(129, 129);
+        assertBucketHighest(130, 131);
+        assertBucketHighest(255, 255);
+        assertBucketHighest(256, 259);
+        assertBucketHighest(259, 259);
+        assertBucketHighest(260, 263);
+    }
+
+    @Test
+    public void relativeErrorIsBounded() {
+        for (long value = 1; value < 1000000000L; value = value * 3 + 1) {
+            Histogram histogram = new Histogram(1L << 40);
+            histogram.record(value);
+            histogram.record(1L << 39);
+            long reported = histogram.getValueAtPercentile(50);
+            assertTrue(value + " reported as " + reported,
+                    reported >= value && reported - value <= value / 64);
+        }
+    }
+
+    @Test
+    public void percentilesOfUniformValues() {
+        Histogram histogram = new Histogram(1000000);
+        for (int value = 1; value <= 1000; value++) {
+            histogram.record(value);
+        }
+        assertEquals(1000, histogram.getTotalCount());
+        assertEquals(1, histogram.getMin());
+        assertEquals(1000, histogram.getMax());
+        assertEquals(500.5, histogram.getMean(), 1e-9);
+        assertWithin(500, histogram.getValueAtPercentile(50));
+        assertWithin(900, histogram.getValueAtPercentile(90));
+        assertWithin(990, histogram.getValueAtPercentile(99));
+        assertEquals(1000, histogram.getValueAtPercentile(100));
+    }
+
+    @Test
+    public void valuesOutOfRangeAreClamped() {
+        Histogram histogram = new Histogram(1000);
+        histogram.record(-5);
+        histogram.record(Long.MAX_VALUE);
+        assertEquals(2, histogram.getTotalCount());
+        assertEquals(0, histogram.getMin());
+        assertEquals(Long.MAX_VALUE, histogram.getMax());
+        assertEquals(0, histogram.getValueAtPercentile(50));
+        assertTrue(histogram.getValueAtPercentile(100) >= histogram.getHighestTrackable());
+    }
+
+    @Test
+    public void addMergesCounts() {
+        Histogram a = new Histogram(1000);
+        Histogram b = new Histogram(1000);
+        a.record(10);
+        a.record(20);
+        b.record(5);
+        b.record(300);
+        a.add(b);
+        assertEquals(4, a.getTotalCount());
+        assertEquals(5, a.getMin());
+        assertEquals(300, a.getMax());
+        assertEquals(83.75, a.getMean(), 1e-9);
+        assertEquals(10, a.getValueAtPercentile(50));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void addRejectsDifferentRanges() {
+        new Histogram(1000).add(new Histogram(1000000));
+    }
+
+    @Test
+    public void resetForgetsEverything() {
+        Histogram histogram = new Histogram(1000);
+        histogram.record(42);
+        histogram.reset();
+        assertEquals(0, histogram.getTotalCount());
+        assertEquals(0, histogram.getMax());
+        assertEquals(0, histogram.getValueAtPercentile(99));
+        histogram.record(7);
+        assertEquals(7, histogram.getMin());
+    }
+
+    /** Check the highest value reported for {@code value} when it isn't the maximum */
+    private static void assertBucketHighest(long value, long highest) {
+        Histogram histogram = new Histogram(1000);
+        histogram.record(value);
+        histogram.record(999);
+        assertEquals("Bucket of " + value, highest, histogram.getValueAtPercentile(50));
+    }
+
+    private static void assertWithin(long expected, long actual) {
+        assertTrue(expected + " reported as " + actual,
+                actual >= expected && actual - expected <= expected / 64);
+    }
+}
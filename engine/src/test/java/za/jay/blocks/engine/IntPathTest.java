@@ -0,0 +1,132 @@
+package za.jay.blocks.engine;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class IntPathTest {
+
+    @Test
+    public void newPathIsEmpty() {
+        IntPath path = new IntPath(36);
+        assertTrue(path.isEmpty());
+        assertEquals(0, path.size());
+        assertEquals(-1, path.getLast());
+        assertEquals(-1, path.getSecondLast());
+        assertFalse(path.isClosed());
+        assertEquals(-1, path.getClosedOn());
+        for (int i = 0; i < 36; i++) {
+            assertFalse(path.contains(i));
+        }
+    }
+
+    @Test
+    public void addKeepsOrderAndMembership() {
+        IntPath path = new IntPath(36);
+        path.add(7);
+        path.add(13);
+        path.add(12);
+
+        assertEquals(3, path.size());
+        assertFalse(path.isEmpty());
+        assertEquals(7, path.get(0));
+        assertEquals(13, path.get(1));
+        assertEquals(12, path.get(2));
+        assertEquals(12, path.getLast());
+        assertEquals(13, path.getSecondLast());
+        assertTrue(path.contains(7));
+        assertTrue(path.contains(13));
+        assertTrue(path.contains(12));
+        assertFalse(path.contains(6));
+        assertFalse(path.contains(8));
+        assertArrayEquals(new int[] { 7, 13, 12 }, path.toArray());
+    }
+
+    @Test
+    public void removeLastBacktracks() {
+        IntPath path = new IntPath(36);
+        path.add(0);
+        path.add(1);
+        path.add(7);
+
+        assertEquals(7, path.removeLast());
+        assertFalse(path.contains(7));
+        assertEquals(1, path.getLast());
+        assertEquals(0, path.getSecondLast());
+
+        // A block backtracked over can be added again
+        path.add(7);
+        assertTrue(path.contains(7));
+        assertEquals(7, path.removeLast());
+
+        assertEquals(1, path.removeLast());
+        assertEquals(0, path.removeLast());
+        assertTrue(path.isEmpty());
+        assertFalse(path.contains(0));
+    }
+
+    @Test
+    public void membershipWorksAcrossWords() {
+        int capacity = 100 * 100;
+        IntPath path = new IntPath(capacity);
+        int[] blocks = { 0, 63, 64, 127, 128, 5000, capacity - 1 };
+        for (int block : blocks) {
+            path.add(block);
+        }
+        for (int i = 0; i < capacity; i++) {
+            boolean expected = false;
+            for (int block : blocks) {
+                expected |= block == i;
+            }
+            assertEquals("Block " + i, expected, path.contains(i));
+        }
+    }
+
+    @Test
+    public void closeRecordsTheBlockClosedOn() {
+        IntPath path = new IntPath(36);
+        path.add(0);
+        path.add(1);
+        path.add(7);
+        path.add(6);
+        path.close(0);
+
+        assertTrue(path.isClosed());
+        assertEquals(0, path.getClosedOn());
+        assertEquals(4, path.size());
+    }
+
+    @Test
+    public void clearEmptiesThePath() {
+        IntPath path = new IntPath(200);
+        path.add(3);
+        path.add(70);
+        path.add(199);
+        path.close(3);
+        path.clear();
+
+        assertTrue(path.isEmpty());
+        assertFalse(path.isClosed());
+        assertFalse(path.contains(3));
+        assertFalse(path.contains(70));
+        assertFalse(path.contains(199));
+
+        path.add(70);
+        assertArrayEquals(new int[] { 70 }, path.toArray());
+    }
+
+    @Test
+    public void indicesArrayIsShared() {
+        IntPath path = new IntPath(36);
+        path.add(4);
+        path.add(5);
+        int[] indices = path.getIndices();
+        assertSame(indices, path.getIndices());
+        assertEquals(4, indices[0]);
+        assertEquals(5, indices[1]);
+    }
+}
@@ -0,0 +1,155 @@
+package za.jay.blocks.engine;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that the links {@link MoveAnalyzer} updates after each operation always agree with
+ * links rebuilt from scratch, and that the moves it finds can be played.
+ */
+public class MoveAnalyzerTest {
+
+    private static final int[] COLOURS = { 1, 2, 3, 4, 5 };
+    private static final int MOVES = 300;
+
+    @Test
+    public void incrementalLinksMatchRebuild() {
+        checkIncrementalLinks(6, 6, 1);
+        checkIncrementalLinks(1, 10, 2);
+        checkIncrementalLinks(10, 1, 3);
+        checkIncrementalLinks(16, 12, 4);
+    }
+
+    @Test
+    public void moveCountMatchesAdjacentPairs() {
+        GridModel model = newModel(8, 8);
+        MoveAnalyzer analyzer = new MoveAnalyzer(model);
+        model.setGridBatchChangeListener(analyzer);
+        Random random = new Random(9);
+        for (int move = 0; move < MOVES; move++) {
+            model.removeColor(COLOURS[random.nextInt(COLOURS.length)]);
+
+            int pairs = 0;
+            for (int colour : COLOURS) {
+                pairs += model.getColourBoard(colour).countAdjacentPairs();
+            }
+            assertEquals(pairs, analyzer.getMoveCount());
+            assertEquals(pairs > 0, analyzer.hasMoves());
+        }
+    }
+
+    @Test
+    public void bestMoveCanBePlayed() {
+        GridModel model = newModel(6, 6);
+        MoveAnalyzer analyzer = new MoveAnalyzer(model);
+        model.setGridBatchChangeListener(analyzer);
+        for (int move = 0; move < MOVES; move++) {
+            if (!analyzer.hasMoves()) {
+                model.shuffle();
+                continue;
+            }
+
+            MoveAnalyzer.Move best = analyzer.findBestMove();
+            assertValidMove(model, best);
+            if (best.loop) {
+                assertEquals(model.getColourCount(model.getBlock(best.path[0])), best.score);
+                model.removeColor(model.getBlock(best.path[0]));
+            } else {
+                assertEquals(best.path.length, best.score);
+                model.removePath(toList(best.path));
+            }
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void largeBoardMovesCanBePlayed() {
+        // Two colours give a few sprawling groups alongside many small ones, so each hint has to
+        // walk big groups without rescanning the board for every one of them
+        GridModel model = new GridModel(100, 100, new int[] { 1, 2 }, true, new SplitMixRandom(5));
+        MoveAnalyzer analyzer = new MoveAnalyzer(model);
+        model.setGridBatchChangeListener(analyzer);
+        for (int move = 0; move < 50; move++) {
+            MoveAnalyzer.Move longest = analyzer.findLongestPath();
+            assertValidMove(model, longest);
+            assertEquals(longest.path.length, longest.score);
+
+            MoveAnalyzer.Move best = analyzer.findBestMove();
+            assertValidMove(model, best);
+            assertTrue(best.score >= longest.score);
+            model.removePath(toList(longest.path));
+        }
+    }
+
+    private static void checkIncrementalLinks(int width, int height, long seed) {
+        Random random = new Random(seed);
+        GridModel model = newModel(width, height);
+        MoveAnalyzer analyzer = new MoveAnalyzer(model);
+        model.setGridBatchChangeListener(analyzer);
+
+        int size = width * height;
+        for (int move = 0; move < MOVES; move++) {
+            switch (move % 4) {
+                case 0:
+                    model.removeColor(COLOURS[random.nextInt(COLOURS.length)]);
+                    break;
+                case 1:
+                    List<Integer> path = new ArrayList<Integer>();
+                    path.add(random.nextInt(size));
+                    model.removePath(path);
+                    break;
+                case 2:
+                    model.removeBlock(random.nextInt(size));
+                    break;
+                default:
+                    model.shuffle();
+                    break;
+            }
+            assertEquals(new MoveAnalyzer(model).getMoveCount(), analyzer.getMoveCount());
+        }
+    }
+
+    private static GridModel newModel(int width, int height) {
+        return new GridModel(width, height, COLOURS, true,
+                new SplitMixRandom(width * 31 + height));
+    }
+
+    /** Check a move is a chain of distinct, adjacent blocks of one colour */
+    private static void assertValidMove(GridModel model, MoveAnalyzer.Move move) {
+        int width = model.getWidth();
+        boolean[] seen = new boolean[width * model.getHeight()];
+        int colour = model.getBlock(move.path[0]);
+        assertTrue(move.path.length >= 2);
+        for (int i = 0; i < move.path.length; i++) {
+            int index = move.path[i];
+            assertFalse("Block " + index + " is in the path twice", seen[index]);
+            seen[index] = true;
+            assertEquals(colour, model.getBlock(index));
+            if (i > 0) {
+                assertTrue(isAdjacent(move.path[i - 1], index, width));
+            }
+        }
+        if (move.loop) {
+            assertTrue(move.path.length >= 4);
+            assertTrue(isAdjacent(move.path[move.path.length - 1], move.path[0], width));
+        }
+    }
+
+    private static boolean isAdjacent(int a, int b, int width) {
+        return Math.abs(a - b) == width || (Math.abs(a - b) == 1 && a / width == b / width);
+    }
+
+    private static List<Integer> toList(int[] indices) {
+        List<Integer> list = new ArrayList<Integer>(indices.length);
+        for (int index : indices) {
+            list.add(index);
+        }
+        return list;
+    }
+}
@@ -0,0 +1,71 @@
+package za.jay.blocks.engine;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that {@link SplitMixRandom} is reproducible from its seed and that
+ * {@link SplitMixRandom#nextInts(int[], int, int, int)} draws exactly what repeated calls to
+ * {@link SplitMixRandom#nextInt(int)} would, which the order {@link GridModel} refills columns in
+ * depends on.
+ */
+public class SplitMixRandomTest {
+
+    @Test
+    public void sameSeedGivesSameSequence() {
+        SplitMixRandom a = new SplitMixRandom(42);
+        SplitMixRandom b = new SplitMixRandom(42);
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(a.nextLong(), b.nextLong());
+            assertEquals(a.nextInt(7), b.nextInt(7));
+        }
+    }
+
+    @Test
+    public void differentSeedsGiveDifferentSequences() {
+        SplitMixRandom a = new SplitMixRandom(1);
+        SplitMixRandom b = new SplitMixRandom(2);
+        boolean differ = false;
+        for (int i = 0; i < 10; i++) {
+            differ |= a.nextLong() != b.nextLong();
+        }
+        assertTrue(differ);
+    }
+
+    @Test
+    public void nextIntsMatchesRepeatedNextInt() {
+        for (int bound = 1; bound <= 9; bound++) {
+            SplitMixRandom single = new SplitMixRandom(bound);
+            SplitMixRandom batch = new SplitMixRandom(bound);
+            for (int count = 0; count < 20; count++) {
+                int[] expected = new int[count + 3];
+                int[] actual = new int[count + 3];
+                for (int i = 0; i < count; i++) {
+                    expected[i + 2] = single.nextInt(bound);
+                }
+                batch.nextInts(actual, 2, count, bound);
+                assertArrayEquals(expected, actual);
+            }
+            // Both are left in the same state
+            assertEquals(single.nextLong(), batch.nextLong());
+        }
+    }
+
+    @Test
+    public void nextIntStaysInBounds() {
+        SplitMixRandom random = new SplitMixRandom(3);
+        int[] counts = new int[5];
+        for (int i = 0; i < 10000; i++) {
+            int value = random.nextInt(counts.length);
+            assertTrue(value >= 0 && value < counts.length);
+            counts[value]++;
+        }
+        for (int count : counts) {
+            assertFalse("A value was never drawn", count == 0);
+        }
+    }
+}
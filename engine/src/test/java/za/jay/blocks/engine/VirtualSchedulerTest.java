@@ -0,0 +1,131 @@
+package za.jay.blocks.engine;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class VirtualSchedulerTest {
+
+    private final VirtualScheduler mScheduler = new VirtualScheduler();
+    private final List<String> mRuns = new ArrayList<String>();
+
+    @Test
+    public void timeOnlyMovesWhenAdvanced() {
+        assertEquals(0, mScheduler.now());
+        mScheduler.advanceBy(250);
+        assertEquals(250, mScheduler.now());
+        mScheduler.advanceTo(1000);
+        assertEquals(1000, mScheduler.now());
+
+        // Time never goes backwards
+        mScheduler.advanceTo(500);
+        assertEquals(1000, mScheduler.now());
+        assertEquals(42, new VirtualScheduler(42).now());
+    }
+
+    @Test
+    public void tasksRunInOrderOfDueTimeThenScheduling() {
+        mScheduler.schedule(task("c", 300), 300);
+        mScheduler.schedule(task("a", 100), 100);
+        mScheduler.schedule(task("b1", 200), 200);
+        mScheduler.schedule(task("b2", 200), 200);
+        mScheduler.schedule(task("d", 400), 400);
+
+        mScheduler.advanceBy(300);
+        assertEquals(Arrays.asList("a", "b1", "b2", "c"), mRuns);
+        assertEquals(1, mScheduler.getPendingCount());
+        assertEquals(300, mScheduler.now());
+    }
+
+    @Test
+    public void tasksScheduledByTasksRunInTheSameAdvance() {
+        mScheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                mRuns.add("first@" + mScheduler.now());
+                mScheduler.schedule(task("second", 150), 50);
+                mScheduler.schedule(task("late", 1100), 1000);
+            }
+        }, 100);
+
+        mScheduler.advanceBy(200);
+        assertEquals(Arrays.asList("first@100", "second"), mRuns);
+        assertEquals(1, mScheduler.getPendingCount());
+    }
+
+    @Test
+    public void negativeDelaysRunNow() {
+        mScheduler.advanceBy(100);
+        mScheduler.schedule(task("now", 100), -50);
+        mScheduler.advanceBy(0);
+        assertEquals(Arrays.asList("now"), mRuns);
+    }
+
+    @Test
+    public void cancelDropsEveryPendingRun() {
+        Runnable repeated = task("repeated", -1);
+        mScheduler.schedule(repeated, 10);
+        mScheduler.schedule(repeated, 20);
+        mScheduler.schedule(task("other", 30), 30);
+        mScheduler.cancel(repeated);
+
+        assertEquals(1, mScheduler.getPendingCount());
+        mScheduler.advanceBy(100);
+        assertEquals(Arrays.asList("other"), mRuns);
+
+        // A cancelled task can be scheduled again
+        mScheduler.schedule(repeated, 0);
+        mScheduler.advanceBy(0);
+        assertEquals(Arrays.asList("other", "repeated"), mRuns);
+    }
+
+    @Test
+    public void releaseDropsEveryPendingRun() {
+        Runnable released = task("released", -1);
+        mScheduler.schedule(released, 10);
+        mScheduler.schedule(task("other", 30), 30);
+        mScheduler.release(released);
+
+        mScheduler.advanceBy(100);
+        assertEquals(Arrays.asList("other"), mRuns);
+        assertEquals(0, mScheduler.getPendingCount());
+    }
+
+    @Test
+    public void runNextJumpsToTheNextTask() {
+        mScheduler.schedule(task("a", 5000), 5000);
+        assertTrue(mScheduler.runNext());
+        assertEquals(5000, mScheduler.now());
+        assertFalse(mScheduler.runNext());
+    }
+
+    @Test
+    public void resetDropsTasksAndSetsTheClock() {
+        mScheduler.schedule(task("dropped", -1), 10);
+        mScheduler.advanceBy(5);
+        mScheduler.reset(0);
+        assertEquals(0, mScheduler.now());
+        assertEquals(0, mScheduler.getPendingCount());
+        mScheduler.advanceBy(100);
+        assertTrue(mRuns.isEmpty());
+    }
+
+    /** Create a task that records its name, and checks the clock if {@code dueTime} isn't -1 */
+    private Runnable task(final String name, final long dueTime) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                if (dueTime >= 0) {
+                    assertEquals(name + " ran at the wrong time", dueTime, mScheduler.now());
+                }
+                mRuns.add(name);
+            }
+        };
+    }
+}
@@ -0,0 +1,15 @@
+package za.jay.blocks.simulator;
+
+import za.jay.blocks.engine.GameSession;
+import za.jay.blocks.engine.MoveAnalyzer;
+
+/**
+ * A strategy for playing games. Bots aren't thread safe, each worker creates its own.
+ */
+public interface Bot {
+    /**
+     * Choose the next move to play.
+     * @return the move or null if there are no moves on the board
+     */
+    MoveAnalyzer.Move chooseMove(GameSession session);
+}
@@ -0,0 +1,151 @@
+package za.jay.blocks.simulator;
+
+import za.jay.blocks.engine.Countdown;
+import za.jay.blocks.engine.GameMode;
+import za.jay.blocks.engine.GameSession;
+import za.jay.blocks.engine.GridModel;
+import za.jay.blocks.engine.MoveAnalyzer;
+import za.jay.blocks.engine.PowerUp;
+import za.jay.blocks.engine.VirtualScheduler;
+
+/**
+ * Plays complete games headless. Timed games run the same {@link Countdown} as the app on a
+ * {@link VirtualScheduler}, which is advanced by a fixed think time after each move, so a full
+ * game takes no real time. Endless games are cut off after {@link #ENDLESS_MOVE_LIMIT} moves.
+ */
+public class GameRunner {
+
+    /** Number of moves an endless game is played for */
+    public static final int ENDLESS_MOVE_LIMIT = 100;
+
+    private final GameMode mMode;
+    private final int mWidth;
+    private final int mHeight;
+    private final int[] mPalette;
+    private final long mThinkMillis;
+    private final VirtualScheduler mScheduler = new VirtualScheduler();
+
+    private int mMovesPlayed;
+
+    public GameRunner(GameMode mode, int width, int height, int[] palette, long thinkMillis) {
+        mMode = mode;
+        mWidth = width;
+        mHeight = height;
+        mPalette = palette;
+        mThinkMillis = thinkMillis;
+    }
+
+    /**
+     * Play a game to the end.
+     * @param powerUp a power-up to use once during the game, or null to play without power-ups
+     * @return the final score
+     */
+    public int play(long seed, Bot bot, PowerUp powerUp) {
+        final GameSession session = new GameSession(mMode, mWidth, mHeight, mPalette, seed);
+        boolean powerUpPending = powerUp != null && session.isPowerUpAvailable(powerUp);
+        mMovesPlayed = 0;
+
+        Countdown countdown = null;
+        if (mMode == GameMode.TIMED) {
+            mScheduler.reset(0);
+            countdown = new Countdown(GameSession.TIME_LIMIT, mScheduler);
+            countdown.setListener(new Countdown.Listener() {
+                @Override
+                public void onCountdownTick(long remaining) {
+                    if (remaining == 0) {
+                        session.finish();
+                    }
+                }
+            });
+            countdown.play();
+        }
+
+        while (!session.isOver()) {
+            if (mMode == GameMode.ENDLESS && mMovesPlayed >= ENDLESS_MOVE_LIMIT) {
+                break;
+            }
+
+            MoveAnalyzer.Move move = bot.chooseMove(session);
+            if (move == null) {
+                // The board couldn't be shuffled into having a move
+                break;
+            }
+
+            if (powerUpPending && shouldUsePowerUp(session, powerUp, move)) {
+                powerUpPending = false;
+                session.usePowerUp(powerUp);
+                if (powerUp == PowerUp.MORE_MOVES) {
+                    // Doesn't take a move, just buys more of them
+                    if (countdown != null) {
+                        countdown.freeze(GameSession.TIME_STOP_DURATION);
+                    }
+                    continue;
+                }
+                session.tap(findPowerUpTarget(session, powerUp, move));
+            } else {
+                playMove(session, move);
+            }
+            mMovesPlayed++;
+            if (countdown != null) {
+                // Running out of time here finishes the game
+                mScheduler.advanceBy(mThinkMillis);
+            }
+        }
+        return session.getScore();
+    }
+
+    /** Get the number of moves made in the last game played */
+    public int getMovesPlayed() {
+        return mMovesPlayed;
+    }
+
+    /** Drag out a move as a player would */
+    public static void playMove(GameSession session, MoveAnalyzer.Move move) {
+        int[] path = move.path;
+        session.beginPath(path[0]);
+        for (int i = 1; i < path.length; i++) {
+            session.extendPath(path[i]);
+        }
+        if (move.loop) {
+            session.extendPath(path[0]);
+        }
+        session.endPath();
+    }
+
+    /**
+     * Decide whether to spend the power-up instead of playing {@code move}. More moves are used
+     * straight away, shrinkers in place of the first two block move and expanders as soon as they
+     * would remove more blocks than the move.
+     */
+    private boolean shouldUsePowerUp(GameSession session, PowerUp powerUp, MoveAnalyzer.Move move) {
+        switch (powerUp) {
+            case MORE_MOVES:
+                return true;
+            case SHRINKERS:
+                return move.score <= 2;
+            case EXPANDERS:
+                GridModel model = session.getModel();
+                return model.getColourCount(mostCommonColour(model)) > move.score;
+            default:
+                return false;
+        }
+    }
+
+    private int findPowerUpTarget(GameSession session, PowerUp powerUp, MoveAnalyzer.Move move) {
+        if (powerUp == PowerUp.EXPANDERS) {
+            GridModel model = session.getModel();
+            return model.getColourBoard(mostCommonColour(model)).nextSetBit(0);
+        }
+        return move.path[0];
+    }
+
+    private int mostCommonColour(GridModel model) {
+        int best = mPalette[0];
+        for (int i = 1; i < mPalette.length; i++) {
+            if (model.getColourCount(mPalette[i]) > model.getColourCount(best)) {
+                best = mPalette[i];
+            }
+        }
+        return best;
+    }
+}
@@ -0,0 +1,13 @@
+package za.jay.blocks.simulator;
+
+import za.jay.blocks.engine.GameSession;
+import za.jay.blocks.engine.MoveAnalyzer;
+
+/** Always plays the longest path it can find, ignoring loops */
+public class GreedyBot implements Bot {
+
+    @Override
+    public MoveAnalyzer.Move chooseMove(GameSession session) {
+        return session.getAnalyzer().findLongestPath();
+    }
+}
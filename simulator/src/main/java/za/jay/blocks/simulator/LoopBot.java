@@ -0,0 +1,15 @@
+package za.jay.blocks.simulator;
+
+import za.jay.blocks.engine.GameSession;
+import za.jay.blocks.engine.MoveAnalyzer;
+
+/** Closes the best loop on the board whenever there is one, otherwise plays the longest path */
+public class LoopBot implements Bot {
+
+    @Override
+    public MoveAnalyzer.Move chooseMove(GameSession session) {
+        MoveAnalyzer analyzer = session.getAnalyzer();
+        MoveAnalyzer.Move loop = analyzer.findBestLoop();
+        return loop != null ? loop : analyzer.findLongestPath();
+    }
+}
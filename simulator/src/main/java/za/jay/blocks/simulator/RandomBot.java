@@ -0,0 +1,95 @@
+package za.jay.blocks.simulator;
+
+import java.util.Arrays;
+
+import za.jay.blocks.engine.GameSession;
+import za.jay.blocks.engine.GridModel;
+import za.jay.blocks.engine.MoveAnalyzer;
+import za.jay.blocks.engine.RandomSource;
+
+/**
+ * Plays like someone who isn't paying much attention: starts at a random block that has a move
+ * and wanders to random neighbours of the same colour, stopping after each step with even odds.
+ */
+public class RandomBot implements Bot {
+
+    private final RandomSource mRandom;
+
+    private int[] mVisited;
+    private int mVisitStamp;
+    private int[] mPath;
+    private final int[] mOptions = new int[4];
+
+    public RandomBot(RandomSource random) {
+        mRandom = random;
+    }
+
+    @Override
+    public MoveAnalyzer.Move chooseMove(GameSession session) {
+        if (!session.getAnalyzer().hasMoves()) {
+            return null;
+        }
+
+        GridModel model = session.getModel();
+        int size = model.getWidth() * model.getHeight();
+        if (mVisited == null || mVisited.length != size) {
+            mVisited = new int[size];
+            mPath = new int[size];
+        }
+        mVisitStamp++;
+
+        // Start from the first block at or after a random position that has a move
+        int length = 0;
+        int offset = mRandom.nextInt(size);
+        for (int i = 0; i < size; i++) {
+            int index = (offset + i) % size;
+            if (findOptions(model, index) > 0) {
+                mVisited[index] = mVisitStamp;
+                mPath[length++] = index;
+                break;
+            }
+        }
+
+        do {
+            int options = findOptions(model, mPath[length - 1]);
+            if (options == 0) {
+                break;
+            }
+            int next = mOptions[mRandom.nextInt(options)];
+            mVisited[next] = mVisitStamp;
+            mPath[length++] = next;
+        } while (mRandom.nextInt(2) == 0);
+
+        return new MoveAnalyzer.Move(Arrays.copyOf(mPath, length), false, length);
+    }
+
+    /**
+     * Find the unvisited neighbours of a block that have the same colour.
+     * @return the number of neighbours found, which are stored in {@link #mOptions}
+     */
+    private int findOptions(GridModel model, int index) {
+        int width = model.getWidth();
+        int size = width * model.getHeight();
+        int count = 0;
+        if (index % width != 0) {
+            count = addOption(model, index, index - 1, count);
+        }
+        if ((index + 1) % width != 0) {
+            count = addOption(model, index, index + 1, count);
+        }
+        if (index >= width) {
+            count = addOption(model, index, index - width, count);
+        }
+        if (index + width < size) {
+            count = addOption(model, index, index + width, count);
+        }
+        return count;
+    }
+
+    private int addOption(GridModel model, int index, int neighbour, int count) {
+        if (mVisited[neighbour] != mVisitStamp && model.getBlock(neighbour) == model.getBlock(index)) {
+            mOptions[count++] = neighbour;
+        }
+        return count;
+    }
+}
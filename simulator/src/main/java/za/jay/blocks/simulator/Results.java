@@ -0,0 +1,131 @@
+package za.jay.blocks.simulator;
+
+import java.util.Arrays;
+
+import za.jay.blocks.engine.PowerUp;
+
+/**
+ * Totals for a batch of simulated games: a histogram of the scores and, for each power-up, the
+ * change in score from using it in the same game. Results from separate batches can be merged.
+ */
+public class Results {
+
+    private long[] mScoreCounts = new long[256];
+    private int mMaxScore;
+    private long mGames;
+    private long mMoves;
+
+    private final long[] mPowerUpGames = new long[PowerUp.values().length];
+    private final double[] mPowerUpDeltaSums = new double[PowerUp.values().length];
+    private final double[] mPowerUpDeltaSquares = new double[PowerUp.values().length];
+
+    /** Add a game played without power-ups */
+    public void addGame(int score, int moves) {
+        if (score >= mScoreCounts.length) {
+            mScoreCounts = Arrays.copyOf(mScoreCounts, Math.max(score + 1, mScoreCounts.length * 2));
+        }
+        mScoreCounts[score]++;
+        mMaxScore = Math.max(mMaxScore, score);
+        mGames++;
+        mMoves += moves;
+    }
+
+    /** Add a replay of a game with a power-up that changed the score by {@code delta} */
+    public void addPowerUpGame(PowerUp powerUp, int delta, int moves) {
+        int i = powerUp.ordinal();
+        mPowerUpGames[i]++;
+        mPowerUpDeltaSums[i] += delta;
+        mPowerUpDeltaSquares[i] += (double) delta * delta;
+        mMoves += moves;
+    }
+
+    public void merge(Results other) {
+        if (other.mMaxScore >= mScoreCounts.length) {
+            mScoreCounts = Arrays.copyOf(mScoreCounts, other.mScoreCounts.length);
+        }
+        for (int score = 0; score <= other.mMaxScore; score++) {
+            mScoreCounts[score] += other.mScoreCounts[score];
+        }
+        mMaxScore = Math.max(mMaxScore, other.mMaxScore);
+        mGames += other.mGames;
+        mMoves += other.mMoves;
+
+        for (int i = 0; i < mPowerUpGames.length; i++) {
+            mPowerUpGames[i] += other.mPowerUpGames[i];
+            mPowerUpDeltaSums[i] += other.mPowerUpDeltaSums[i];
+            mPowerUpDeltaSquares[i] += other.mPowerUpDeltaSquares[i];
+        }
+    }
+
+    /** Get the number of games played without power-ups */
+    public long getGames() {
+        return mGames;
+    }
+
+    /** Get the number of moves made in all games, including those replayed with power-ups */
+    public long getMoves() {
+        return mMoves;
+    }
+
+    public long getScoreCount(int score) {
+        return score < mScoreCounts.length ? mScoreCounts[score] : 0;
+    }
+
+    public int getMaxScore() {
+        return mMaxScore;
+    }
+
+    public double getMean() {
+        double sum = 0;
+        for (int score = 0; score <= mMaxScore; score++) {
+            sum += (double) score * mScoreCounts[score];
+        }
+        return sum / mGames;
+    }
+
+    public double getStandardDeviation() {
+        double mean = getMean();
+        double sum = 0;
+        for (int score = 0; score <= mMaxScore; score++) {
+            double deviation = score - mean;
+            sum += deviation * deviation * mScoreCounts[score];
+        }
+        return Math.sqrt(sum / mGames);
+    }
+
+    /** Get the lowest score that at least {@code fraction} of games scored no more than */
+    public int getPercentile(double fraction) {
+        long target = (long) Math.ceil(fraction * mGames);
+        long count = 0;
+        for (int score = 0; score <= mMaxScore; score++) {
+            count += mScoreCounts[score];
+            if (count >= target && count > 0) {
+                return score;
+            }
+        }
+        return mMaxScore;
+    }
+
+    /** Get the number of games replayed with the power-up */
+    public long getPowerUpGames(PowerUp powerUp) {
+        return mPowerUpGames[powerUp.ordinal()];
+    }
+
+    /** Get the mean change in score from using the power-up */
+    public double getPowerUpValue(PowerUp powerUp) {
+        int i = powerUp.ordinal();
+        return mPowerUpDeltaSums[i] / mPowerUpGames[i];
+    }
+
+    /** Get the half width of the 95% confidence interval of {@link #getPowerUpValue(PowerUp)} */
+    public double getPowerUpError(PowerUp powerUp) {
+        int i = powerUp.ordinal();
+        long n = mPowerUpGames[i];
+        if (n < 2) {
+            return Double.NaN;
+        }
+        double mean = mPowerUpDeltaSums[i] / n;
+        double variance = (mPowerUpDeltaSquares[i] - n * mean * mean) / (n - 1);
+        return 1.96 * Math.sqrt(Math.max(variance, 0) / n);
+    }
+}
@@ -0,0 +1,42 @@
+package za.jay.blocks.simulator;
+
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Plays a range of games, splitting it in half until the ranges are small enough to play on a
+ * single worker.
+ */
+class SimulationTask extends RecursiveTask<Results> {
+
+    private static final long serialVersionUID = 1L;
+
+    /** Games played by a task without splitting it any further */
+    private static final long GAMES_PER_TASK = 256;
+
+    private final Simulator mSimulator;
+    private final long mFrom;
+    private final long mTo;
+
+    SimulationTask(Simulator simulator, long from, long to) {
+        mSimulator = simulator;
+        mFrom = from;
+        mTo = to;
+    }
+
+    @Override
+    protected Results compute() {
+        if (mTo - mFrom <= GAMES_PER_TASK) {
+            Results results = new Results();
+            mSimulator.playGames(mFrom, mTo, results);
+            return results;
+        }
+
+        long middle = (mFrom + mTo) >>> 1;
+        SimulationTask left = new SimulationTask(mSimulator, mFrom, middle);
+        SimulationTask right = new SimulationTask(mSimulator, middle, mTo);
+        left.fork();
+        Results results = right.compute();
+        results.merge(left.join());
+        return results;
+    }
+}
@@ -0,0 +1,195 @@
+package za.jay.blocks.simulator;
+
+import java.util.concurrent.ForkJoinPool;
+
+import za.jay.blocks.engine.GameMode;
+import za.jay.blocks.engine.PowerUp;
+import za.jay.blocks.engine.SplitMixRandom;
+
+/**
+ * Plays large numbers of games with a bot to measure the distribution of scores and the value of
+ * each power-up. Games are spread across all cores with a fork/join pool. Every batch of games
+ * seeds its own generator from the simulation seed and the number of its first game, so the
+ * results for a seed are the same however the batches are scheduled.
+ * <p>
+ * Power-ups are valued by replaying each game with the same board seed and bot, using the
+ * power-up once, and taking the mean change in score.
+ */
+public class Simulator {
+
+    private static final int HISTOGRAM_ROWS = 20;
+    private static final int HISTOGRAM_WIDTH = 60;
+
+    private final GameMode mMode;
+    private final int mWidth;
+    private final int mHeight;
+    private final int[] mPalette;
+    private final Strategy mStrategy;
+    private final long mThinkMillis;
+    private final long mSeed;
+    private final boolean mValuePowerUps;
+
+    public Simulator(GameMode mode, int width, int height, int colours, Strategy strategy,
+            long thinkMillis, long seed, boolean valuePowerUps) {
+        mMode = mode;
+        mWidth = width;
+        mHeight = height;
+        mStrategy = strategy;
+        mThinkMillis = thinkMillis;
+        mSeed = seed;
+        mValuePowerUps = valuePowerUps;
+
+        // Only the equality of colours matters to the rules so any distinct values will do
+        mPalette = new int[colours];
+        for (int i = 0; i < colours; i++) {
+            mPalette[i] = i;
+        }
+    }
+
+    /** Play {@code games} games using every core */
+    public Results run(long games) {
+        ForkJoinPool pool = new ForkJoinPool();
+        try {
+            return pool.invoke(new SimulationTask(this, 0, games));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /** Play the games numbered from {@code from} (inclusive) to {@code to} (exclusive) */
+    void playGames(long from, long to, Results results) {
+        SplitMixRandom random = new SplitMixRandom(new SplitMixRandom(mSeed + from).nextLong());
+        GameRunner runner = new GameRunner(mMode, mWidth, mHeight, mPalette, mThinkMillis);
+        for (long game = from; game < to; game++) {
+            long gameSeed = random.nextLong();
+            long botSeed = random.nextLong();
+
+            int score = runner.play(gameSeed, mStrategy.create(new SplitMixRandom(botSeed)), null);
+            results.addGame(score, runner.getMovesPlayed());
+
+            if (mValuePowerUps) {
+                for (PowerUp powerUp : PowerUp.values()) {
+                    if (powerUp == PowerUp.MORE_MOVES && mMode == GameMode.ENDLESS) {
+                        continue;
+                    }
+                    int powerUpScore = runner.play(gameSeed,
+                            mStrategy.create(new SplitMixRandom(botSeed)), powerUp);
+                    results.addPowerUpGame(powerUp, powerUpScore - score,
+                            runner.getMovesPlayed());
+                }
+            }
+        }
+    }
+
+    private void printReport(Results results, long elapsedNanos) {
+        double seconds = elapsedNanos / 1e9;
+        System.out.printf("%s %dx%d, %d colours, %s bot: %d games in %.1f s%n", mMode, mWidth,
+                mHeight, mPalette.length, mStrategy, results.getGames(), seconds);
+        System.out.printf("%.0f games/s, %.0f moves/s%n", results.getGames() / seconds,
+                results.getMoves() / seconds);
+        System.out.printf("Score: mean %.2f, sd %.2f, p1 %d, p10 %d, p50 %d, p90 %d, p99 %d, max %d%n",
+                results.getMean(), results.getStandardDeviation(), results.getPercentile(0.01),
+                results.getPercentile(0.1), results.getPercentile(0.5),
+                results.getPercentile(0.9), results.getPercentile(0.99), results.getMaxScore());
+
+        // Group the scores into buckets so the histogram fits on screen
+        int min = results.getPercentile(0);
+        int max = results.getMaxScore();
+        int bucket = Math.max(1, (max - min + HISTOGRAM_ROWS) / HISTOGRAM_ROWS);
+        long[] counts = new long[(max - min) / bucket + 1];
+        long biggest = 0;
+        for (int score = min; score <= max; score++) {
+            int i = (score - min) / bucket;
+            counts[i] += results.getScoreCount(score);
+            biggest = Math.max(biggest, counts[i]);
+        }
+        for (int i = 0; i < counts.length; i++) {
+            int bar = (int) (counts[i] * HISTOGRAM_WIDTH / Math.max(biggest, 1));
+            StringBuilder line = new StringBuilder();
+            for (int j = 0; j < bar; j++) {
+                line.append('#');
+            }
+            int from = min + i * bucket;
+            System.out.printf("%5d-%-5d %10d %s%n", from, from + bucket - 1, counts[i], line);
+        }
+
+        if (mValuePowerUps) {
+            System.out.println("Power-up value (mean change in score, 95% CI):");
+            for (PowerUp powerUp : PowerUp.values()) {
+                if (results.getPowerUpGames(powerUp) > 0) {
+                    System.out.printf("  %-10s %+8.2f +/- %.2f%n", powerUp,
+                            results.getPowerUpValue(powerUp), results.getPowerUpError(powerUp));
+                }
+            }
+        }
+    }
+
+    private static void printUsage() {
+        System.err.println("Options:");
+        System.err.println("  -games N       number of games to play (default 100000)");
+        System.err.println("  -mode MODE     MOVES, TIMED or ENDLESS (default MOVES)");
+        System.err.println("  -bot BOT       GREEDY, LOOPS or RANDOM (default GREEDY)");
+        System.err.println("  -width N       board width (default 6)");
+        System.err.println("  -height N      board height (default 6)");
+        System.err.println("  -colours N     number of colours (default 5)");
+        System.err.println("  -think MS      time taken per move in timed games (default 1500)");
+        System.err.println("  -seed N        simulation seed (default random)");
+        System.err.println("  -powerups      also value each power-up");
+    }
+
+    public static void main(String[] args) {
+        long games = 100000;
+        GameMode mode = GameMode.MOVES;
+        Strategy strategy = Strategy.GREEDY;
+        int width = 6;
+        int height = 6;
+        int colours = 5;
+        long thinkMillis = 1500;
+        long seed = new SplitMixRandom().nextLong();
+        boolean valuePowerUps = false;
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                if (arg.equals("-powerups")) {
+                    valuePowerUps = true;
+                    continue;
+                }
+                if (i + 1 == args.length) {
+                    throw new IllegalArgumentException("Missing value for " + arg);
+                }
+                String value = args[++i];
+                if (arg.equals("-games")) {
+                    games = Long.parseLong(value);
+                } else if (arg.equals("-mode")) {
+                    mode = GameMode.valueOf(value);
+                } else if (arg.equals("-bot")) {
+                    strategy = Strategy.valueOf(value);
+                } else if (arg.equals("-width")) {
+                    width = Integer.parseInt(value);
+                } else if (arg.equals("-height")) {
+                    height = Integer.parseInt(value);
+                } else if (arg.equals("-colours")) {
+                    colours = Integer.parseInt(value);
+                } else if (arg.equals("-think")) {
+                    thinkMillis = Long.parseLong(value);
+                } else if (arg.equals("-seed")) {
+                    seed = Long.parseLong(value);
+                } else {
+                    throw new IllegalArgumentException("Unknown option " + arg);
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            printUsage();
+            System.exit(1);
+        }
+
+        Simulator simulator = new Simulator(mode, width, height, colours, strategy, thinkMillis,
+                seed, valuePowerUps);
+        System.out.println("Seed " + seed);
+        long start = System.nanoTime();
+        Results results = simulator.run(games);
+        simulator.printReport(results, System.nanoTime() - start);
+    }
+}
@@ -0,0 +1,31 @@
+package za.jay.blocks.simulator;
+
+import za.jay.blocks.engine.RandomSource;
+
+/** The bots the simulator can play games with */
+public enum Strategy {
+    /** Always play the longest path, never deliberately closing loops */
+    GREEDY {
+        @Override
+        Bot create(RandomSource random) {
+            return new GreedyBot();
+        }
+    },
+    /** Close the best loop whenever there is one, otherwise play the longest path */
+    LOOPS {
+        @Override
+        Bot create(RandomSource random) {
+            return new LoopBot();
+        }
+    },
+    /** Wander a random distance from a random block */
+    RANDOM {
+        @Override
+        Bot create(RandomSource random) {
+            return new RandomBot(random);
+        }
+    };
+
+    /** Create a bot that makes any random choices using {@code random} */
+    abstract Bot create(RandomSource random);
+}